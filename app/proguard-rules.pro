@@ -22,3 +22,7 @@
 -keep class com.google.android.material.theme.MaterialComponentsViewInflater {
     <init>();
 }
+
+-keep class io.github.vvb2060.keyattestation.repository.BatchVerifier {
+    public static void main(java.lang.String[]);
+}
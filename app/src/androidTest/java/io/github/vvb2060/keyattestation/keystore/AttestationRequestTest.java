@@ -0,0 +1,92 @@
+package io.github.vvb2060.keyattestation.keystore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Parcel;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.security.ProviderException;
+import java.security.cert.CertificateFactory;
+
+@RunWith(AndroidJUnit4.class)
+public class AttestationRequestTest {
+
+    private static AttestationRequest roundTrip(AttestationRequest request) {
+        var parcel = Parcel.obtain();
+        try {
+            request.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            var read = AttestationRequest.CREATOR.createFromParcel(parcel);
+            assertEquals(parcel.dataSize(), parcel.dataPosition());
+            return read;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    @Test
+    public void requestRoundTrip() {
+        var request = new AttestationRequest();
+        request.reset = true;
+        request.alias = "KeyAttestation_strongbox";
+        request.attestKeyAlias = "KeyAttestation_strongbox_persistent";
+        request.useStrongBox = true;
+        request.includeProps = false;
+        request.uniqueIdIncluded = true;
+        request.idFlags = 7;
+        request.challenge = new byte[]{1, 2, 3};
+        request.useSak = false;
+
+        var read = roundTrip(request);
+        assertEquals(request.reset, read.reset);
+        assertEquals(request.alias, read.alias);
+        assertEquals(request.attestKeyAlias, read.attestKeyAlias);
+        assertEquals(request.useStrongBox, read.useStrongBox);
+        assertEquals(request.includeProps, read.includeProps);
+        assertEquals(request.uniqueIdIncluded, read.uniqueIdIncluded);
+        assertEquals(request.idFlags, read.idFlags);
+        assertArrayEquals(request.challenge, read.challenge);
+        assertEquals(request.useSak, read.useSak);
+    }
+
+    @Test
+    public void nullAttestKeyAlias() {
+        var request = new AttestationRequest();
+        request.alias = "KeyAttestation";
+        request.useSak = true;
+
+        var read = roundTrip(request);
+        assertEquals("KeyAttestation", read.alias);
+        assertNull(read.attestKeyAlias);
+        assertNull(read.challenge);
+        assertTrue(read.useSak);
+    }
+
+    @Test
+    public void responseRoundTrip() throws Exception {
+        var data = AttestationResponse.failure(new ProviderException("Failed to generate"));
+        var parcel = Parcel.obtain();
+        byte[] read;
+        try {
+            parcel.writeByteArray(data);
+            parcel.setDataPosition(0);
+            read = parcel.createByteArray();
+        } finally {
+            parcel.recycle();
+        }
+        try {
+            AttestationResponse.read(read, CertificateFactory.getInstance("X.509"));
+            throw new AssertionError("Expected KeyStoreError");
+        } catch (KeyStoreError e) {
+            assertEquals(ProviderException.class.getName(), e.getClassName());
+            assertEquals("Failed to generate", e.getMessage());
+        }
+    }
+}
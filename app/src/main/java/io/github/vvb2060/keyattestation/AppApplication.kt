@@ -4,22 +4,26 @@ import android.annotation.SuppressLint
 import android.app.Application
 import android.content.Context
 import android.content.pm.PackageManager
+import android.util.Log
 import android.widget.Toast
 import androidx.arch.core.executor.ArchTaskExecutor
+import io.github.vvb2060.keyattestation.attestation.ParseTrace
+import io.github.vvb2060.keyattestation.attestation.RevocationList
+import io.github.vvb2060.keyattestation.attestation.TrustData
 import io.github.vvb2060.keyattestation.keystore.KeyStoreManager
+import io.github.vvb2060.keyattestation.util.TaskScheduler
+import io.github.vvb2060.keyattestation.util.TaskScheduler.Lane
 import org.bouncycastle.jce.provider.BouncyCastleProvider
 import rikka.html.text.HtmlCompat
 import rikka.material.app.DayNightDelegate
 import rikka.sui.Sui
 import java.security.Security
-import java.util.concurrent.ExecutorService
-import java.util.concurrent.Executors
 
 class AppApplication : Application() {
     companion object {
         const val TAG = "KeyAttestation"
         lateinit var app: AppApplication
-        val executor: ExecutorService = Executors.newSingleThreadExecutor()
+        val scheduler = TaskScheduler()
 
         @SuppressLint("RestrictedApi")
         fun toast(text: String?) {
@@ -27,6 +31,12 @@ class AppApplication : Application() {
                 Toast.makeText(app, text, Toast.LENGTH_LONG).show()
             }
         }
+
+        fun refreshRevocationList() = scheduler.submit(Lane.NETWORK, "revocation") {
+            runCatching { RevocationList.refreshIfStale() }.onFailure {
+                Log.w(TAG, "Refresh revocation list error.", it)
+            }
+        }
     }
 
     override fun onCreate() {
@@ -36,6 +46,14 @@ class AppApplication : Application() {
         DayNightDelegate.setDefaultNightMode(DayNightDelegate.MODE_NIGHT_FOLLOW_SYSTEM)
         HtmlCompat.setContext(this)
         installProvider(this)
+        if (BuildConfig.DEBUG) {
+            ParseTrace.enable(1, true)
+        }
+        TrustData.warmUp()
+        val sp = getSharedPreferences("settings", MODE_PRIVATE)
+        if (sp.getBoolean("prefer_update_revocation_list", false)) {
+            refreshRevocationList()
+        }
 
         if (Sui.init(BuildConfig.APPLICATION_ID)) {
             KeyStoreManager.requestPermission();
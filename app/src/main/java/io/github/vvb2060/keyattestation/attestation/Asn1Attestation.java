@@ -16,59 +16,43 @@
 
 package io.github.vvb2060.keyattestation.attestation;
 
-import org.bouncycastle.asn1.ASN1Sequence;
-
 import java.security.cert.CertificateParsingException;
-import java.security.cert.X509Certificate;
 
 public class Asn1Attestation extends Attestation {
-    static final int ATTESTATION_VERSION_INDEX = 0;
-    static final int ATTESTATION_SECURITY_LEVEL_INDEX = 1;
-    static final int KEYMASTER_VERSION_INDEX = 2;
-    static final int KEYMASTER_SECURITY_LEVEL_INDEX = 3;
-    static final int ATTESTATION_CHALLENGE_INDEX = 4;
-    static final int UNIQUE_ID_INDEX = 5;
-    static final int SW_ENFORCED_INDEX = 6;
-    static final int TEE_ENFORCED_INDEX = 7;
-
     int attestationSecurityLevel;
 
     /**
-     * Constructs an {@code Asn1Attestation} object from the provided {@link X509Certificate},
-     * extracting the attestation data from the attestation extension.
+     * Constructs an {@code Asn1Attestation} object from the indexed extensions of a
+     * certificate, extracting the attestation data from the attestation extension.
      *
      * @throws CertificateParsingException if the certificate does not contain a properly-formatted
      *     attestation extension.
      */
 
-    public Asn1Attestation(X509Certificate x509Cert) throws CertificateParsingException {
-        super(x509Cert);
-        ASN1Sequence seq = getAttestationSequence(x509Cert);
+    Asn1Attestation(ExtensionIndex extensions) throws CertificateParsingException {
+        super(extensions);
+        DerReader seq = getAttestationSequence(extensions);
 
-        attestationVersion =
-                Asn1Utils.getIntegerFromAsn1(seq.getObjectAt(ATTESTATION_VERSION_INDEX));
-        attestationSecurityLevel =
-                Asn1Utils.getIntegerFromAsn1(seq.getObjectAt(ATTESTATION_SECURITY_LEVEL_INDEX));
-        keymasterVersion = Asn1Utils.getIntegerFromAsn1(seq.getObjectAt(KEYMASTER_VERSION_INDEX));
-        keymasterSecurityLevel =
-                Asn1Utils.getIntegerFromAsn1(seq.getObjectAt(KEYMASTER_SECURITY_LEVEL_INDEX));
+        attestationVersion = seq.next().getInt();
+        attestationSecurityLevel = seq.next().getInt();
+        keymasterVersion = seq.next().getInt();
+        keymasterSecurityLevel = seq.next().getInt();
 
-        attestationChallenge =
-                Asn1Utils.getByteArrayFromAsn1(seq.getObjectAt(ATTESTATION_CHALLENGE_INDEX));
+        attestationChallenge = seq.next().getOctets();
 
-        uniqueId = Asn1Utils.getByteArrayFromAsn1(seq.getObjectAt(UNIQUE_ID_INDEX));
+        uniqueId = seq.next().getOctets();
 
-        softwareEnforced = new AuthorizationList(seq.getObjectAt(SW_ENFORCED_INDEX));
-        teeEnforced = new AuthorizationList(seq.getObjectAt(TEE_ENFORCED_INDEX));
+        softwareEnforced = new AuthorizationList(seq.next());
+        teeEnforced = new AuthorizationList(seq.next());
     }
 
-    ASN1Sequence getAttestationSequence(X509Certificate x509Cert)
+    DerReader getAttestationSequence(ExtensionIndex extensions)
             throws CertificateParsingException {
-        byte[] attestationExtensionBytes = x509Cert.getExtensionValue(Attestation.ASN1_OID);
-        if (attestationExtensionBytes == null || attestationExtensionBytes.length == 0) {
+        DerReader extension = extensions.getReader(Attestation.ASN1_OID);
+        if (extension == null || !extension.hasNext()) {
             throw new CertificateParsingException("Did not find extension with OID " + ASN1_OID);
         }
-        return Asn1Utils.getAsn1SequenceFromBytes(attestationExtensionBytes);
+        return extension.next().enter(DerReader.SEQUENCE, "sequence");
     }
 
     public int getAttestationSecurityLevel() {
@@ -31,7 +31,6 @@ import org.bouncycastle.asn1.ASN1Set;
 import org.bouncycastle.asn1.DEROctetString;
 
 import java.io.IOException;
-import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.security.cert.CertificateParsingException;
 import java.util.Date;
@@ -42,23 +41,40 @@ public class Asn1Utils {
 
     public static int getIntegerFromAsn1(ASN1Encodable asn1Value)
             throws CertificateParsingException {
-        if (asn1Value instanceof ASN1Integer) {
-            return bigIntegerToInt(((ASN1Integer) asn1Value).getValue());
-        } else if (asn1Value instanceof ASN1Enumerated) {
-            return bigIntegerToInt(((ASN1Enumerated) asn1Value).getValue());
-        } else {
-            throw new CertificateParsingException(
-                    "Integer value expected, " + asn1Value.getClass().getName() + " found.");
+        int value;
+        try {
+            if (asn1Value instanceof ASN1Integer integer) {
+                value = integer.intValueExact();
+            } else if (asn1Value instanceof ASN1Enumerated enumerated) {
+                value = enumerated.intValueExact();
+            } else {
+                throw new CertificateParsingException(
+                        "Integer value expected, " + asn1Value.getClass().getName() + " found.");
+            }
+        } catch (ArithmeticException e) {
+            throw new CertificateParsingException("INTEGER out of bounds");
         }
+        if (value < 0) {
+            throw new CertificateParsingException("INTEGER out of bounds");
+        }
+        return value;
     }
 
     public static Long getLongFromAsn1(ASN1Encodable asn1Value) throws CertificateParsingException {
-        if (asn1Value instanceof ASN1Integer) {
-            return bigIntegerToLong(((ASN1Integer) asn1Value).getValue());
-        } else {
+        if (!(asn1Value instanceof ASN1Integer integer)) {
             throw new CertificateParsingException(
                     "Integer value expected, " + asn1Value.getClass().getName() + " found.");
         }
+        long value;
+        try {
+            value = integer.longValueExact();
+        } catch (ArithmeticException e) {
+            throw new CertificateParsingException("INTEGER out of bounds");
+        }
+        if (value < 0) {
+            throw new CertificateParsingException("INTEGER out of bounds");
+        }
+        return value;
     }
 
     public static byte[] getByteArrayFromAsn1(ASN1Encodable asn1Encodable)
@@ -157,20 +173,4 @@ public class Asn1Utils {
         throw new CertificateParsingException(
                 "DER-encoded boolean values must contain either 0x00 or 0xFF");
     }
-
-    private static int bigIntegerToInt(BigInteger bigInt) throws CertificateParsingException {
-        if (bigInt.compareTo(BigInteger.valueOf(Integer.MAX_VALUE)) > 0
-                || bigInt.compareTo(BigInteger.ZERO) < 0) {
-            throw new CertificateParsingException("INTEGER out of bounds");
-        }
-        return bigInt.intValue();
-    }
-
-    private static long bigIntegerToLong(BigInteger bigInt) throws CertificateParsingException {
-        if (bigInt.compareTo(BigInteger.valueOf(Long.MAX_VALUE)) > 0
-                || bigInt.compareTo(BigInteger.ZERO) < 0) {
-            throw new CertificateParsingException("INTEGER out of bounds");
-        }
-        return bigInt.longValue();
-    }
 }
@@ -26,8 +26,6 @@ import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Set;
 
-import co.nstant.in.cbor.CborException;
-
 /**
  * Parses an attestation certificate and provides an easy-to-use interface for examining the
  * contents.
@@ -63,28 +61,28 @@ public abstract class Attestation {
      */
 
     public static Attestation loadFromCertificate(X509Certificate x509Cert) throws CertificateParsingException {
-        if (x509Cert.getExtensionValue(EAT_OID) == null
-                && x509Cert.getExtensionValue(ASN1_OID) == null) {
+        return loadFromExtensions(ExtensionIndex.of(x509Cert));
+    }
+
+    static Attestation loadFromExtensions(ExtensionIndex extensions) throws CertificateParsingException {
+        boolean eat = extensions.contains(EAT_OID);
+        if (!eat && !extensions.contains(ASN1_OID)) {
             throw new CertificateParsingException("No attestation extensions found");
         }
-        if (x509Cert.getExtensionValue(EAT_OID) != null) {
-            if (x509Cert.getExtensionValue(ASN1_OID) != null) {
+        if (eat) {
+            if (extensions.contains(ASN1_OID)) {
                 throw new CertificateParsingException("Multiple attestation extensions found");
             }
-            try {
-                return new EatAttestation(x509Cert);
-            } catch (CborException cbe) {
-                throw new CertificateParsingException("Unable to parse EAT extension", cbe);
-            }
+            return new EatAttestation(extensions);
         }
-        if (x509Cert.getExtensionValue(KNOX_OID) != null) {
-            return new KnoxAttestation(x509Cert);
+        if (extensions.contains(KNOX_OID)) {
+            return new KnoxAttestation(extensions);
         }
-        return new Asn1Attestation(x509Cert);
+        return new Asn1Attestation(extensions);
     }
 
-    Attestation(X509Certificate x509Cert) {
-        unexpectedExtensionOids = retrieveUnexpectedExtensionOids(x509Cert);
+    Attestation(ExtensionIndex extensions) {
+        unexpectedExtensionOids = retrieveUnexpectedExtensionOids(extensions);
     }
 
     public static String securityLevelToString(int attestationSecurityLevel) {
@@ -159,6 +157,15 @@ public abstract class Attestation {
         return teeEnforced;
     }
 
+    /**
+     * Decodes the authorization list values that have not been read yet, so that malformed
+     * values are reported here instead of being skipped later.
+     */
+    void decodeAuthorizationLists() throws CertificateParsingException {
+        if (softwareEnforced != null) softwareEnforced.decodeAll();
+        if (teeEnforced != null) teeEnforced.decodeAll();
+    }
+
     public Set<String> getUnexpectedExtensionOids() {
         return unexpectedExtensionOids;
     }
@@ -192,16 +199,15 @@ public abstract class Attestation {
         return s.toString();
     }
 
-    Set<String> retrieveUnexpectedExtensionOids(X509Certificate x509Cert) {
-        return new ImmutableSet.Builder<String>()
-                .addAll(x509Cert.getCriticalExtensionOIDs()
-                        .stream()
-                        .filter(s -> !KEY_USAGE_OID.equals(s))
-                        .iterator())
-                .addAll(x509Cert.getNonCriticalExtensionOIDs()
-                        .stream()
-                        .filter(s -> !ASN1_OID.equals(s) && !EAT_OID.equals(s))
-                        .iterator())
-                .build();
+    Set<String> retrieveUnexpectedExtensionOids(ExtensionIndex extensions) {
+        var oids = new ImmutableSet.Builder<String>();
+        for (int i = 0; i < extensions.size(); i++) {
+            var oid = extensions.getOid(i);
+            if (extensions.isCritical(i) ? !KEY_USAGE_OID.equals(oid)
+                    : !ASN1_OID.equals(oid) && !EAT_OID.equals(oid)) {
+                oids.add(oid);
+            }
+        }
+        return oids.build();
     }
 }
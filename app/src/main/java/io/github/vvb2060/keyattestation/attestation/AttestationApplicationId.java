@@ -20,21 +20,27 @@ import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.Signature;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.google.common.io.BaseEncoding;
 
-import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.ASN1Sequence;
-import org.bouncycastle.asn1.ASN1Set;
-
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateParsingException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class AttestationApplicationId implements java.lang.Comparable<AttestationApplicationId> {
-    private static final int PACKAGE_INFOS_INDEX = 0;
-    private static final int SIGNATURE_DIGESTS_INDEX = 1;
+    private static final int POOL_SIZE = 256;
+
+    // Entries are dropped once no certificate refers to them, or when the pool is full.
+    private static final Cache<HashCode, AttestationApplicationId> pool = CacheBuilder.newBuilder()
+            .maximumSize(POOL_SIZE)
+            .weakValues()
+            .build();
 
     private final List<AttestationPackageInfo> packageInfos;
     private final List<byte[]> signatureDigests;
@@ -68,28 +74,49 @@ public class AttestationApplicationId implements java.lang.Comparable<Attestatio
         signatureDigests.sort(new ByteArrayComparator());
     }
 
-    public AttestationApplicationId(ASN1Encodable asn1Encodable)
-            throws CertificateParsingException {
-        if (!(asn1Encodable instanceof ASN1Sequence sequence)) {
-            throw new CertificateParsingException(
-                    "Expected sequence for AttestationApplicationId, found "
-                            + asn1Encodable.getClass().getName());
-        }
+    AttestationApplicationId(DerReader reader) throws CertificateParsingException {
+        var sequence = reader.enter(DerReader.SEQUENCE, "sequence for AttestationApplicationId");
 
-        packageInfos = parseAttestationPackageInfos(sequence.getObjectAt(PACKAGE_INFOS_INDEX));
+        var infos = parseAttestationPackageInfos(sequence.next());
         // The infos must be sorted, the implementation of Comparable relies on it.
-        packageInfos.sort(null);
-        signatureDigests = parseSignatures(sequence.getObjectAt(SIGNATURE_DIGESTS_INDEX));
+        infos.sort(null);
+        packageInfos = Collections.unmodifiableList(infos);
+        var digests = parseSignatures(sequence.next());
         // The digests must be sorted. the implementation of Comparable relies on it
-        signatureDigests.sort(new ByteArrayComparator());
+        digests.sort(new ByteArrayComparator());
+        signatureDigests = Collections.unmodifiableList(digests);
+    }
+
+    /**
+     * Parses the DER encoding carried by the ATTESTATION_APPLICATION_ID tag.
+     * <p>
+     * Every key of an app carries the same encoding, so parsed instances are interned by the
+     * SHA-256 of the encoding and shared between certificates. Parsed instances are immutable,
+     * {@link #getSignatureDigests()} hands out copies of the digests.
+     */
+    static AttestationApplicationId parse(byte[] encoded) throws CertificateParsingException {
+        var key = Hashing.sha256().hashBytes(encoded);
+        var applicationId = pool.getIfPresent(key);
+        if (applicationId == null) {
+            applicationId = new AttestationApplicationId(new DerReader(encoded).next());
+            pool.put(key, applicationId);
+        }
+        return applicationId;
     }
 
     public List<AttestationPackageInfo> getAttestationPackageInfos() {
         return packageInfos;
     }
 
+    /**
+     * @return copies of the signature digests, in sorted order
+     */
     public List<byte[]> getSignatureDigests() {
-        return signatureDigests;
+        var digests = new ArrayList<byte[]>(signatureDigests.size());
+        for (byte[] digest : signatureDigests) {
+            digests.add(digest.clone());
+        }
+        return digests;
     }
 
     @Override
@@ -137,32 +164,24 @@ public class AttestationApplicationId implements java.lang.Comparable<Attestatio
                 && (0 == compareTo((AttestationApplicationId) o));
     }
 
-    private List<AttestationPackageInfo> parseAttestationPackageInfos(ASN1Encodable asn1Encodable)
+    private List<AttestationPackageInfo> parseAttestationPackageInfos(DerReader reader)
             throws CertificateParsingException {
-        if (!(asn1Encodable instanceof ASN1Set set)) {
-            throw new CertificateParsingException(
-                    "Expected set for AttestationApplicationsInfos, found "
-                            + asn1Encodable.getClass().getName());
-        }
+        var set = reader.enter(DerReader.SET, "set for AttestationApplicationsInfos");
 
         List<AttestationPackageInfo> result = new ArrayList<AttestationPackageInfo>();
-        for (ASN1Encodable e : set) {
-            result.add(new AttestationPackageInfo(e));
+        while (set.hasNext()) {
+            result.add(new AttestationPackageInfo(set.next()));
         }
         return result;
     }
 
-    private List<byte[]> parseSignatures(ASN1Encodable asn1Encodable)
-            throws CertificateParsingException {
-        if (!(asn1Encodable instanceof ASN1Set set)) {
-            throw new CertificateParsingException("Expected set for Signature digests, found "
-                    + asn1Encodable.getClass().getName());
-        }
+    private List<byte[]> parseSignatures(DerReader reader) throws CertificateParsingException {
+        var set = reader.enter(DerReader.SET, "set for Signature digests");
 
         List<byte[]> result = new ArrayList<byte[]>();
 
-        for (ASN1Encodable e : set) {
-            result.add(Asn1Utils.getByteArrayFromAsn1(e));
+        while (set.hasNext()) {
+            result.add(set.next().getOctets());
         }
         return result;
     }
@@ -14,15 +14,9 @@
 
 package io.github.vvb2060.keyattestation.attestation;
 
-import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.ASN1Sequence;
-
 import java.security.cert.CertificateParsingException;
 
 public class AttestationPackageInfo implements java.lang.Comparable<AttestationPackageInfo> {
-    private static final int PACKAGE_NAME_INDEX = 0;
-    private static final int VERSION_INDEX = 1;
-
     private final String packageName;
     private final long version;
 
@@ -31,16 +25,11 @@ public class AttestationPackageInfo implements java.lang.Comparable<AttestationP
         this.version = version;
     }
 
-    public AttestationPackageInfo(ASN1Encodable asn1Encodable) throws CertificateParsingException {
-        if (!(asn1Encodable instanceof ASN1Sequence sequence)) {
-            throw new CertificateParsingException(
-                    "Expected sequence for AttestationPackageInfo, found "
-                            + asn1Encodable.getClass().getName());
-        }
+    AttestationPackageInfo(DerReader reader) throws CertificateParsingException {
+        var sequence = reader.enter(DerReader.SEQUENCE, "sequence for AttestationPackageInfo");
 
-        packageName = Asn1Utils.getStringFromAsn1OctetStreamAssumingUTF8(
-                sequence.getObjectAt(PACKAGE_NAME_INDEX));
-        version = Asn1Utils.getLongFromAsn1(sequence.getObjectAt(VERSION_INDEX));
+        packageName = sequence.next().getUtf8();
+        version = sequence.next().getLong();
     }
 
     public String getPackageName() {
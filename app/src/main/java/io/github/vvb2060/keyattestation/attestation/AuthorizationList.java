@@ -16,9 +16,6 @@
 
 package io.github.vvb2060.keyattestation.attestation;
 
-import static com.google.common.base.Functions.forMap;
-import static com.google.common.collect.Collections2.transform;
-
 import android.security.keystore.KeyProperties;
 import android.util.Log;
 
@@ -27,19 +24,14 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.io.BaseEncoding;
 
-import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.ASN1Sequence;
-import org.bouncycastle.asn1.ASN1TaggedObject;
-
 import java.security.cert.CertificateParsingException;
 import java.text.DateFormat;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
-import java.util.Set;
 
-import co.nstant.in.cbor.model.DataItem;
-import co.nstant.in.cbor.model.Number;
 import io.github.vvb2060.keyattestation.AppApplication;
 
 public class AuthorizationList {
@@ -57,6 +49,12 @@ public class AuthorizationList {
     public static final int KM_EC_CURVE_P521 = 3;
     public static final int KM_EC_CURVE_25519 = 4;
 
+    // Block modes.
+    public static final int KM_MODE_ECB = 1;
+    public static final int KM_MODE_CBC = 2;
+    public static final int KM_MODE_CTR = 3;
+    public static final int KM_MODE_GCM = 32;
+
     // Padding modes.
     public static final int KM_PAD_NONE = 1;
     public static final int KM_PAD_RSA_OAEP = 2;
@@ -158,6 +156,15 @@ public class AuthorizationList {
     public static final int KM_TAG_ATTESTATION_ID_SECOND_IMEI = KM_BYTES | 723;
 	public static final int KM_TAG_MODULE_HASH = KM_BYTES | 724;
 
+    // Map for converting block mode values to strings
+    private static final ImmutableMap<Integer, String> blockModeMap = ImmutableMap
+            .<Integer, String>builder()
+            .put(KM_MODE_ECB, KeyProperties.BLOCK_MODE_ECB)
+            .put(KM_MODE_CBC, KeyProperties.BLOCK_MODE_CBC)
+            .put(KM_MODE_CTR, KeyProperties.BLOCK_MODE_CTR)
+            .put(KM_MODE_GCM, KeyProperties.BLOCK_MODE_GCM)
+            .build();
+
     // Map for converting padding values to strings
     private static final ImmutableMap<Integer, String> paddingMap = ImmutableMap
             .<Integer, String>builder()
@@ -193,15 +200,105 @@ public class AuthorizationList {
             .put(KM_PURPOSE_ATTEST_KEY, "ATTEST KEY")
             .build();
 
+    private interface Decoder {
+        void decode(AuthorizationList list, DerReader value) throws CertificateParsingException;
+    }
+
+    private record Field(int number, Decoder decoder) {
+        Field {
+            number &= KEYMASTER_TAG_TYPE_MASK;
+        }
+    }
+
+    // Decoders of the key description tags, sorted by tag number below
+    private static final Field[] FIELDS = {
+            new Field(KM_TAG_PURPOSE, (list, value) -> list.purposes = value.getEnumSet()),
+            new Field(KM_TAG_ALGORITHM, (list, value) -> list.algorithm = value.getInt()),
+            new Field(KM_TAG_KEY_SIZE, (list, value) -> list.keySize = value.getInt()),
+            new Field(KM_TAG_BLOCK_MODE,
+                    (list, value) -> list.blockModes = value.getEnumSet()),
+            new Field(KM_TAG_DIGEST, (list, value) -> list.digests = value.getEnumSet()),
+            new Field(KM_TAG_PADDING, (list, value) -> list.paddingModes = value.getEnumSet()),
+            new Field(KM_TAG_EC_CURVE, (list, value) -> list.ecCurve = value.getInt()),
+            new Field(KM_TAG_RSA_PUBLIC_EXPONENT,
+                    (list, value) -> list.rsaPublicExponent = value.getLong()),
+            new Field(KM_TAG_RSA_OAEP_MGF_DIGEST,
+                    (list, value) -> list.mgfDigests = value.getEnumSet()),
+            new Field(KM_TAG_ROLLBACK_RESISTANCE, (list, value) -> list.rollbackResistance = true),
+            new Field(KM_TAG_EARLY_BOOT_ONLY, (list, value) -> list.earlyBootOnly = true),
+            new Field(KM_TAG_ACTIVE_DATETIME,
+                    (list, value) -> list.activeDateTime = value.getDate()),
+            new Field(KM_TAG_ORIGINATION_EXPIRE_DATETIME,
+                    (list, value) -> list.originationExpireDateTime = value.getDate()),
+            new Field(KM_TAG_USAGE_EXPIRE_DATETIME,
+                    (list, value) -> list.usageExpireDateTime = value.getDate()),
+            new Field(KM_TAG_USAGE_COUNT_LIMIT,
+                    (list, value) -> list.usageCountLimit = value.getInt()),
+            new Field(KM_TAG_NO_AUTH_REQUIRED, (list, value) -> list.noAuthRequired = true),
+            new Field(KM_TAG_USER_AUTH_TYPE, (list, value) -> list.userAuthType = value.getInt()),
+            new Field(KM_TAG_AUTH_TIMEOUT, (list, value) -> list.authTimeout = value.getInt()),
+            new Field(KM_TAG_ALLOW_WHILE_ON_BODY, (list, value) -> list.allowWhileOnBody = true),
+            new Field(KM_TAG_TRUSTED_USER_PRESENCE_REQUIRED,
+                    (list, value) -> list.trustedUserPresenceReq = true),
+            new Field(KM_TAG_TRUSTED_CONFIRMATION_REQUIRED,
+                    (list, value) -> list.trustedConfirmationReq = true),
+            new Field(KM_TAG_UNLOCKED_DEVICE_REQUIRED,
+                    (list, value) -> list.unlockedDeviceReq = true),
+            new Field(KM_TAG_ALL_APPLICATIONS, (list, value) -> list.allApplications = true),
+            new Field(KM_TAG_APPLICATION_ID, (list, value) -> list.applicationId = value.getUtf8()),
+            new Field(KM_TAG_CREATION_DATETIME,
+                    (list, value) -> list.creationDateTime = value.getDate()),
+            new Field(KM_TAG_ORIGIN, (list, value) -> list.origin = value.getInt()),
+            new Field(KM_TAG_ROLLBACK_RESISTANT, (list, value) -> list.rollbackResistant = true),
+            new Field(KM_TAG_ROOT_OF_TRUST,
+                    (list, value) -> list.rootOfTrust = new RootOfTrust(value)),
+            new Field(KM_TAG_OS_VERSION, (list, value) -> list.osVersion = value.getInt()),
+            new Field(KM_TAG_OS_PATCHLEVEL, (list, value) -> list.osPatchLevel = value.getInt()),
+            new Field(KM_TAG_ATTESTATION_APPLICATION_ID,
+                    (list, value) -> list.attestationApplicationId =
+                            AttestationApplicationId.parse(value.getOctets())),
+            new Field(KM_TAG_ATTESTATION_ID_BRAND, (list, value) -> list.brand = value.getUtf8()),
+            new Field(KM_TAG_ATTESTATION_ID_DEVICE, (list, value) -> list.device = value.getUtf8()),
+            new Field(KM_TAG_ATTESTATION_ID_PRODUCT,
+                    (list, value) -> list.product = value.getUtf8()),
+            new Field(KM_TAG_ATTESTATION_ID_SERIAL,
+                    (list, value) -> list.serialNumber = value.getUtf8()),
+            new Field(KM_TAG_ATTESTATION_ID_IMEI, (list, value) -> list.imei = value.getUtf8()),
+            new Field(KM_TAG_ATTESTATION_ID_MEID, (list, value) -> list.meid = value.getUtf8()),
+            new Field(KM_TAG_ATTESTATION_ID_MANUFACTURER,
+                    (list, value) -> list.manufacturer = value.getUtf8()),
+            new Field(KM_TAG_ATTESTATION_ID_MODEL, (list, value) -> list.model = value.getUtf8()),
+            new Field(KM_TAG_VENDOR_PATCHLEVEL,
+                    (list, value) -> list.vendorPatchLevel = value.getInt()),
+            new Field(KM_TAG_BOOT_PATCHLEVEL,
+                    (list, value) -> list.bootPatchLevel = value.getInt()),
+            new Field(KM_TAG_DEVICE_UNIQUE_ATTESTATION,
+                    (list, value) -> list.deviceUniqueAttestation = true),
+            new Field(KM_TAG_IDENTITY_CREDENTIAL_KEY,
+                    (list, value) -> list.identityCredentialKey = true),
+            new Field(KM_TAG_ATTESTATION_ID_SECOND_IMEI,
+                    (list, value) -> list.secondImei = value.getUtf8()),
+            new Field(KM_TAG_MODULE_HASH, (list, value) -> list.moduleHash = value.getOctets()),
+    };
+    private static final int[] FIELD_NUMBERS = new int[FIELDS.length];
+
+    static {
+        Arrays.sort(FIELDS, Comparator.comparingInt(Field::number));
+        for (int i = 0; i < FIELDS.length; i++) {
+            FIELD_NUMBERS[i] = FIELDS[i].number;
+        }
+    }
+
     private Integer securityLevel;
-    private Set<Integer> purposes;
+    private KmEnumSet purposes;
     private Integer algorithm;
     private Integer keySize;
-    private Set<Integer> digests;
-    private Set<Integer> paddingModes;
+    private KmEnumSet blockModes;
+    private KmEnumSet digests;
+    private KmEnumSet paddingModes;
     private Integer ecCurve;
     private Long rsaPublicExponent;
-    private Set<Integer> mgfDigests;
+    private KmEnumSet mgfDigests;
     private Boolean rollbackResistance;
     private Boolean earlyBootOnly;
     private Date activeDateTime;
@@ -239,294 +336,242 @@ public class AuthorizationList {
     private String secondImei;
 	private byte[] moduleHash;
 
-    public AuthorizationList(ASN1Encodable asn1Encodable) throws CertificateParsingException {
-        if (!(asn1Encodable instanceof ASN1Sequence sequence)) {
-            throw new CertificateParsingException("Expected sequence for authorization list, found "
-                    + asn1Encodable.getClass().getName());
-        }
-        for (var entry : sequence) {
-            if (!(entry instanceof ASN1TaggedObject taggedObject)) {
-                throw new CertificateParsingException(
-                        "Expected tagged object, found " + entry.getClass().getName());
-            }
-            int tag = taggedObject.getTagNo();
-            var value = taggedObject.getBaseObject().toASN1Primitive();
-            Log.v(AppApplication.TAG, "Parsing tag: [" + tag + "], value: [" + value + "]");
-            switch (tag) {
-                default:
+    private final byte[] encoded;
+    private final int[] spans;
+    private final long present;
+    private volatile long decoded;
+    private long failed;
+
+    /**
+     * Indexes the tags of a key description authorization list. The values are decoded when
+     * they are first read, or all at once by {@link #decodeAll()}.
+     */
+    AuthorizationList(DerReader reader) throws CertificateParsingException {
+        var sequence = reader.enter(DerReader.SEQUENCE, "sequence for authorization list");
+        boolean trace = ParseTrace.sample();
+        long present = 0;
+        encoded = sequence.data();
+        spans = new int[FIELDS.length * 2];
+        while (sequence.hasNext()) {
+            sequence.next();
+            int tag = sequence.tagNo();
+            int start = sequence.elementStart();
+            int end = sequence.elementEnd();
+            try {
+                sequence.unwrap();
+                int slot = Arrays.binarySearch(FIELD_NUMBERS, tag);
+                if (slot < 0) {
                     throw new CertificateParsingException("Unknown tag " + tag + " found");
-
-                case KM_TAG_PURPOSE & KEYMASTER_TAG_TYPE_MASK:
-                    purposes = Asn1Utils.getIntegersFromAsn1Set(value);
-                    break;
-                case KM_TAG_ALGORITHM & KEYMASTER_TAG_TYPE_MASK:
-                    algorithm = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_KEY_SIZE & KEYMASTER_TAG_TYPE_MASK:
-                    keySize = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_DIGEST & KEYMASTER_TAG_TYPE_MASK:
-                    digests = Asn1Utils.getIntegersFromAsn1Set(value);
-                    break;
-                case KM_TAG_PADDING & KEYMASTER_TAG_TYPE_MASK:
-                    paddingModes = Asn1Utils.getIntegersFromAsn1Set(value);
-                    break;
-                case KM_TAG_EC_CURVE & KEYMASTER_TAG_TYPE_MASK:
-                    ecCurve = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_RSA_PUBLIC_EXPONENT & KEYMASTER_TAG_TYPE_MASK:
-                    rsaPublicExponent = Asn1Utils.getLongFromAsn1(value);
-                    break;
-                case KM_TAG_RSA_OAEP_MGF_DIGEST & KEYMASTER_TAG_TYPE_MASK:
-                    mgfDigests = Asn1Utils.getIntegersFromAsn1Set(value);
-                    break;
-                case KM_TAG_ROLLBACK_RESISTANCE & KEYMASTER_TAG_TYPE_MASK:
-                    rollbackResistance = true;
-                    break;
-                case KM_TAG_EARLY_BOOT_ONLY & KEYMASTER_TAG_TYPE_MASK:
-                    earlyBootOnly = true;
-                    break;
-                case KM_TAG_ACTIVE_DATETIME & KEYMASTER_TAG_TYPE_MASK:
-                    activeDateTime = Asn1Utils.getDateFromAsn1(value);
-                    break;
-                case KM_TAG_ORIGINATION_EXPIRE_DATETIME & KEYMASTER_TAG_TYPE_MASK:
-                    originationExpireDateTime = Asn1Utils.getDateFromAsn1(value);
-                    break;
-                case KM_TAG_USAGE_EXPIRE_DATETIME & KEYMASTER_TAG_TYPE_MASK:
-                    usageExpireDateTime = Asn1Utils.getDateFromAsn1(value);
-                    break;
-                case KM_TAG_USAGE_COUNT_LIMIT & KEYMASTER_TAG_TYPE_MASK:
-                    usageCountLimit = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_NO_AUTH_REQUIRED & KEYMASTER_TAG_TYPE_MASK:
-                    noAuthRequired = true;
-                    break;
-                case KM_TAG_USER_AUTH_TYPE & KEYMASTER_TAG_TYPE_MASK:
-                    userAuthType = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_AUTH_TIMEOUT & KEYMASTER_TAG_TYPE_MASK:
-                    authTimeout = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_ALLOW_WHILE_ON_BODY & KEYMASTER_TAG_TYPE_MASK:
-                    allowWhileOnBody = true;
-                    break;
-                case KM_TAG_TRUSTED_USER_PRESENCE_REQUIRED & KEYMASTER_TAG_TYPE_MASK:
-                    trustedUserPresenceReq = true;
-                    break;
-                case KM_TAG_TRUSTED_CONFIRMATION_REQUIRED & KEYMASTER_TAG_TYPE_MASK:
-                    trustedConfirmationReq = true;
-                    break;
-                case KM_TAG_UNLOCKED_DEVICE_REQUIRED & KEYMASTER_TAG_TYPE_MASK:
-                    unlockedDeviceReq = true;
-                    break;
-                case KM_TAG_ALL_APPLICATIONS & KEYMASTER_TAG_TYPE_MASK:
-                    allApplications = true;
-                    break;
-                case KM_TAG_APPLICATION_ID & KEYMASTER_TAG_TYPE_MASK:
-                    applicationId = Asn1Utils.getStringFromAsn1OctetStreamAssumingUTF8(value);
-                    break;
-                case KM_TAG_CREATION_DATETIME & KEYMASTER_TAG_TYPE_MASK:
-                    creationDateTime = Asn1Utils.getDateFromAsn1(value);
-                    break;
-                case KM_TAG_ORIGIN & KEYMASTER_TAG_TYPE_MASK:
-                    origin = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_ROLLBACK_RESISTANT & KEYMASTER_TAG_TYPE_MASK:
-                    rollbackResistant = true;
-                    break;
-                case KM_TAG_ROOT_OF_TRUST & KEYMASTER_TAG_TYPE_MASK:
-                    rootOfTrust = new RootOfTrust(value);
-                    break;
-                case KM_TAG_OS_VERSION & KEYMASTER_TAG_TYPE_MASK:
-                    osVersion = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_OS_PATCHLEVEL & KEYMASTER_TAG_TYPE_MASK:
-                    osPatchLevel = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_ATTESTATION_APPLICATION_ID & KEYMASTER_TAG_TYPE_MASK:
-                    attestationApplicationId = new AttestationApplicationId(Asn1Utils
-                            .getAsn1EncodableFromBytes(Asn1Utils.getByteArrayFromAsn1(value)));
-                    break;
-                case KM_TAG_ATTESTATION_ID_BRAND & KEYMASTER_TAG_TYPE_MASK:
-                    brand = Asn1Utils.getStringFromAsn1OctetStreamAssumingUTF8(value);
-                    break;
-                case KM_TAG_ATTESTATION_ID_DEVICE & KEYMASTER_TAG_TYPE_MASK:
-                    device = Asn1Utils.getStringFromAsn1OctetStreamAssumingUTF8(value);
-                    break;
-                case KM_TAG_ATTESTATION_ID_PRODUCT & KEYMASTER_TAG_TYPE_MASK:
-                    product = Asn1Utils.getStringFromAsn1OctetStreamAssumingUTF8(value);
-                    break;
-                case KM_TAG_ATTESTATION_ID_SERIAL & KEYMASTER_TAG_TYPE_MASK:
-                    serialNumber = Asn1Utils.getStringFromAsn1OctetStreamAssumingUTF8(value);
-                    break;
-                case KM_TAG_ATTESTATION_ID_IMEI & KEYMASTER_TAG_TYPE_MASK:
-                    imei = Asn1Utils.getStringFromAsn1OctetStreamAssumingUTF8(value);
-                    break;
-                case KM_TAG_ATTESTATION_ID_MEID & KEYMASTER_TAG_TYPE_MASK:
-                    meid = Asn1Utils.getStringFromAsn1OctetStreamAssumingUTF8(value);
-                    break;
-                case KM_TAG_ATTESTATION_ID_MANUFACTURER & KEYMASTER_TAG_TYPE_MASK:
-                    manufacturer = Asn1Utils.getStringFromAsn1OctetStreamAssumingUTF8(value);
-                    break;
-                case KM_TAG_ATTESTATION_ID_MODEL & KEYMASTER_TAG_TYPE_MASK:
-                    model = Asn1Utils.getStringFromAsn1OctetStreamAssumingUTF8(value);
-                    break;
-                case KM_TAG_VENDOR_PATCHLEVEL & KEYMASTER_TAG_TYPE_MASK:
-                    vendorPatchLevel = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_BOOT_PATCHLEVEL & KEYMASTER_TAG_TYPE_MASK:
-                    bootPatchLevel = Asn1Utils.getIntegerFromAsn1(value);
-                    break;
-                case KM_TAG_DEVICE_UNIQUE_ATTESTATION & KEYMASTER_TAG_TYPE_MASK:
-                    deviceUniqueAttestation = true;
-                    break;
-                case KM_TAG_IDENTITY_CREDENTIAL_KEY & KEYMASTER_TAG_TYPE_MASK:
-                    identityCredentialKey = true;
-                    break;
-                case KM_TAG_ATTESTATION_ID_SECOND_IMEI & KEYMASTER_TAG_TYPE_MASK:
-                    secondImei = Asn1Utils.getStringFromAsn1OctetStreamAssumingUTF8(value);
-                    break;
-                case KM_TAG_MODULE_HASH & KEYMASTER_TAG_TYPE_MASK:
-                    moduleHash = Asn1Utils.getByteArrayFromAsn1(value);
-                    break;
+                }
+                spans[slot * 2] = sequence.elementStart();
+                spans[slot * 2 + 1] = end;
+                present |= 1L << slot;
+            } catch (CertificateParsingException e) {
+                ParseTrace.error(tag, encoded, start, end, e);
+                throw e;
             }
+            if (trace) ParseTrace.tag(tag);
         }
-
+        this.present = present;
     }
 
-    public AuthorizationList(co.nstant.in.cbor.model.Map submodMap)
-            throws CertificateParsingException {
-        for (DataItem key : submodMap.getKeys()) {
-            int keyInt = ((Number) key).getValue().intValue();
-            switch (keyInt) {
+    /**
+     * Reads an EAT submod map, the reader must be positioned at its header.
+     */
+    AuthorizationList(CborReader reader) throws CertificateParsingException {
+        encoded = null;
+        spans = null;
+        present = 0;
+        for (int n = reader.readMapSize(); n > 0; n--) {
+            int key = reader.readInt();
+            switch (key) {
                 default:
                     throw new CertificateParsingException("Unknown EAT tag: " + key);
 
                 case EatClaim.SECURITY_LEVEL:
                     securityLevel = EatAttestation.eatSecurityLevelToKeymintSecurityLevel(
-                            CborUtils.getInt(submodMap, key));
+                            reader.readInt());
                     break;
                 case EatClaim.PURPOSE:
-                    purposes = CborUtils.getIntSet(submodMap, key);
+                    purposes = reader.readEnumSet();
                     break;
                 case EatClaim.ALGORITHM:
-                    algorithm = CborUtils.getInt(submodMap, key);
+                    algorithm = reader.readInt();
                     break;
                 case EatClaim.KEY_SIZE:
-                    keySize = CborUtils.getInt(submodMap, key);
+                    keySize = reader.readInt();
+                    break;
+                case EatClaim.BLOCK_MODE:
+                    blockModes = reader.readEnumSet();
                     break;
                 case EatClaim.DIGEST:
-                    digests = CborUtils.getIntSet(submodMap, key);
+                    digests = reader.readEnumSet();
                     break;
                 case EatClaim.PADDING:
-                    paddingModes = CborUtils.getIntSet(submodMap, key);
+                    paddingModes = reader.readEnumSet();
                     break;
                 case EatClaim.RSA_PUBLIC_EXPONENT:
-                    rsaPublicExponent = CborUtils.getLong(submodMap, key);
+                    rsaPublicExponent = reader.readLong();
                     break;
                 case EatClaim.RSA_OAEP_MGF_DIGEST:
-                    mgfDigests = CborUtils.getIntSet(submodMap, key);
+                    mgfDigests = reader.readEnumSet();
                     break;
                 case EatClaim.NO_AUTH_REQUIRED:
+                    reader.skip();
                     noAuthRequired = true;
                     break;
                 case EatClaim.IAT:
-                    creationDateTime = CborUtils.getDate(submodMap, key);
+                    creationDateTime = reader.readDate();
                     break;
                 case EatClaim.ORIGIN:
-                    origin = CborUtils.getInt(submodMap, key);
+                    origin = reader.readInt();
                     break;
                 case EatClaim.OS_VERSION:
-                    osVersion = CborUtils.getInt(submodMap, key);
+                    osVersion = reader.readInt();
                     break;
                 case EatClaim.OS_PATCHLEVEL:
-                    osPatchLevel = CborUtils.getInt(submodMap, key);
+                    osPatchLevel = reader.readInt();
                     break;
                 case EatClaim.VENDOR_PATCHLEVEL:
-                    vendorPatchLevel = CborUtils.getInt(submodMap, key);
+                    vendorPatchLevel = reader.readInt();
                     break;
                 case EatClaim.BOOT_PATCHLEVEL:
-                    bootPatchLevel = CborUtils.getInt(submodMap, key);
+                    bootPatchLevel = reader.readInt();
                     break;
                 case EatClaim.ACTIVE_DATETIME:
-                    activeDateTime = CborUtils.getDate(submodMap, key);
+                    activeDateTime = reader.readDate();
                     break;
                 case EatClaim.ORIGINATION_EXPIRE_DATETIME:
-                    originationExpireDateTime = CborUtils.getDate(submodMap, key);
+                    originationExpireDateTime = reader.readDate();
                     break;
                 case EatClaim.USAGE_EXPIRE_DATETIME:
-                    usageExpireDateTime = CborUtils.getDate(submodMap, key);
+                    usageExpireDateTime = reader.readDate();
                     break;
                 case EatClaim.ROLLBACK_RESISTANT:
+                    reader.skip();
                     rollbackResistant = true;
                     break;
                 case EatClaim.ROLLBACK_RESISTANCE:
+                    reader.skip();
                     rollbackResistance = true;
                     break;
                 case EatClaim.AUTH_TIMEOUT:
-                    authTimeout = CborUtils.getInt(submodMap, key);
+                    authTimeout = reader.readInt();
                     break;
                 case EatClaim.ALLOW_WHILE_ON_BODY:
+                    reader.skip();
                     allowWhileOnBody = true;
                     break;
                 case EatClaim.EC_CURVE:
-                    ecCurve = CborUtils.getInt(submodMap, key);
+                    ecCurve = reader.readInt();
                     break;
                 case EatClaim.USER_AUTH_TYPE:
-                    userAuthType = CborUtils.getInt(submodMap, key);
+                    userAuthType = reader.readInt();
                     break;
                 case EatClaim.ATTESTATION_APPLICATION_ID:
                     // TODO: The attestation application ID is currently still encoded as an ASN.1
                     // structure. Parse a CBOR structure when it's available instead.
-                    attestationApplicationId = new AttestationApplicationId(
-                            Asn1Utils.getAsn1EncodableFromBytes(CborUtils.getBytes(submodMap, key)));
+                    attestationApplicationId =
+                            AttestationApplicationId.parse(reader.readBytes());
                     break;
                 case EatClaim.ATTESTATION_ID_BRAND:
-                    brand = CborUtils.getString(submodMap, key);
+                    brand = reader.readByteString();
                     break;
                 case EatClaim.ATTESTATION_ID_DEVICE:
-                    device = CborUtils.getString(submodMap, key);
+                    device = reader.readByteString();
                     break;
                 case EatClaim.ATTESTATION_ID_PRODUCT:
-                    product = CborUtils.getString(submodMap, key);
+                    product = reader.readByteString();
                     break;
                 case EatClaim.ATTESTATION_ID_SERIAL:
-                    serialNumber = CborUtils.getString(submodMap, key);
+                    serialNumber = reader.readByteString();
                     break;
                 case EatClaim.UEID:
                     // TODO: Parse depending on encoding chosen in attestation_record.cpp.
-                    imei = CborUtils.getString(submodMap, key);
+                    imei = reader.readByteString();
                     break;
                 case EatClaim.ATTESTATION_ID_MEID:
-                    meid = CborUtils.getString(submodMap, key);
+                    meid = reader.readByteString();
                     break;
                 case EatClaim.ATTESTATION_ID_MANUFACTURER:
-                    manufacturer = CborUtils.getString(submodMap, key);
+                    manufacturer = reader.readByteString();
                     break;
                 case EatClaim.ATTESTATION_ID_MODEL:
-                    model = CborUtils.getString(submodMap, key);
+                    model = reader.readByteString();
                     break;
                 case EatClaim.USER_PRESENCE_REQUIRED:
-                    trustedUserPresenceReq = CborUtils.getBoolean(submodMap, key);
+                    trustedUserPresenceReq = reader.readBoolean();
                     break;
                 case EatClaim.TRUSTED_CONFIRMATION_REQUIRED:
+                    reader.skip();
                     trustedConfirmationReq = true;
                     break;
                 case EatClaim.UNLOCKED_DEVICE_REQUIRED:
+                    reader.skip();
                     unlockedDeviceReq = true;
                     break;
                 case EatClaim.APPLICATION_ID:
-                    applicationId = CborUtils.getString(submodMap, key);
+                    applicationId = reader.readByteString();
+                    break;
                 case EatClaim.EARLY_BOOT_ONLY:
+                    reader.skip();
                     earlyBootOnly = true;
                     break;
                 case EatClaim.DEVICE_UNIQUE_ATTESTATION:
+                    reader.skip();
                     deviceUniqueAttestation = true;
                     break;
             }
         }
     }
 
+    private void decodeSlot(int slot) throws CertificateParsingException {
+        int start = spans[slot * 2];
+        int end = spans[slot * 2 + 1];
+        try {
+            FIELDS[slot].decoder.decode(this, new DerReader(encoded, start, end - start).next());
+        } catch (CertificateParsingException e) {
+            ParseTrace.error(FIELDS[slot].number, encoded, start, end, e);
+            throw e;
+        }
+    }
+
+    private void decode(int tag) {
+        int slot = Arrays.binarySearch(FIELD_NUMBERS, tag & KEYMASTER_TAG_TYPE_MASK);
+        long bit = 1L << slot;
+        if ((present & bit) == 0 || (decoded & bit) != 0) {
+            return;
+        }
+        synchronized (this) {
+            if (((decoded | failed) & bit) != 0) {
+                return;
+            }
+            try {
+                decodeSlot(slot);
+                decoded |= bit;
+            } catch (CertificateParsingException e) {
+                // The getter returns null, decodeAll() decodes the tag again and throws.
+                Log.w(AppApplication.TAG, "Failed to decode tag " + FIELDS[slot].number, e);
+                failed |= bit;
+            }
+        }
+    }
+
+    /**
+     * Decodes the tags that have not been read yet, including those a getter failed to decode.
+     *
+     * @throws CertificateParsingException if a value is malformed
+     */
+    synchronized void decodeAll() throws CertificateParsingException {
+        for (int slot = 0; slot < FIELDS.length; slot++) {
+            long bit = 1L << slot;
+            if ((present & bit) != 0 && (decoded & bit) == 0) {
+                decodeSlot(slot);
+                decoded |= bit;
+            }
+        }
+    }
+
     private static String joinStrings(Collection<String> collection) {
         return "[" + Joiner.on(", ").join(collection) + "]";
     }
@@ -535,16 +580,29 @@ public class AuthorizationList {
         return DateFormat.getDateTimeInstance().format(date);
     }
 
-    public static String paddingModesToString(final Set<Integer> paddingModes) {
-        return joinStrings(transform(paddingModes, forMap(paddingMap, "Unknown")));
+    private static String enumSetToString(KmEnumSet set, ImmutableMap<Integer, String> names) {
+        var s = new StringBuilder("[");
+        for (int value = set.next(0); value >= 0; value = set.next(value + 1)) {
+            if (s.length() > 1) s.append(", ");
+            s.append(names.getOrDefault(value, "Unknown"));
+        }
+        return s.append(']').toString();
+    }
+
+    public static String blockModesToString(KmEnumSet blockModes) {
+        return enumSetToString(blockModes, blockModeMap);
+    }
+
+    public static String paddingModesToString(KmEnumSet paddingModes) {
+        return enumSetToString(paddingModes, paddingMap);
     }
 
-    public static String digestsToString(Set<Integer> digests) {
-        return joinStrings(transform(digests, forMap(digestMap, "Unknown")));
+    public static String digestsToString(KmEnumSet digests) {
+        return enumSetToString(digests, digestMap);
     }
 
-    public static String purposesToString(Set<Integer> purposes) {
-        return joinStrings(transform(purposes, forMap(purposeMap, "Unknown")));
+    public static String purposesToString(KmEnumSet purposes) {
+        return enumSetToString(purposes, purposeMap);
     }
 
     public static String algorithmToString(int algorithm) {
@@ -593,184 +651,236 @@ public class AuthorizationList {
         return securityLevel;
     }
 
-    public Set<Integer> getPurposes() {
+    public KmEnumSet getPurposes() {
+        decode(KM_TAG_PURPOSE);
         return purposes;
     }
 
     public Integer getAlgorithm() {
+        decode(KM_TAG_ALGORITHM);
         return algorithm;
     }
 
     public Integer getKeySize() {
+        decode(KM_TAG_KEY_SIZE);
         return keySize;
     }
 
-    public Set<Integer> getDigests() {
+    public KmEnumSet getBlockModes() {
+        decode(KM_TAG_BLOCK_MODE);
+        return blockModes;
+    }
+
+    public KmEnumSet getDigests() {
+        decode(KM_TAG_DIGEST);
         return digests;
     }
 
-    public Set<Integer> getPaddingModes() {
+    public KmEnumSet getPaddingModes() {
+        decode(KM_TAG_PADDING);
         return paddingModes;
     }
 
     public Integer getEcCurve() {
+        decode(KM_TAG_EC_CURVE);
         return ecCurve;
     }
 
     public Long getRsaPublicExponent() {
+        decode(KM_TAG_RSA_PUBLIC_EXPONENT);
         return rsaPublicExponent;
     }
 
-    public Set<Integer> getMgfDigests() {
+    public KmEnumSet getMgfDigests() {
+        decode(KM_TAG_RSA_OAEP_MGF_DIGEST);
         return mgfDigests;
     }
 
     public Boolean getRollbackResistance() {
+        decode(KM_TAG_ROLLBACK_RESISTANCE);
         return rollbackResistance;
     }
 
     public Boolean getEarlyBootOnly() {
+        decode(KM_TAG_EARLY_BOOT_ONLY);
         return earlyBootOnly;
     }
 
     public Date getActiveDateTime() {
+        decode(KM_TAG_ACTIVE_DATETIME);
         return activeDateTime;
     }
 
     public Date getOriginationExpireDateTime() {
+        decode(KM_TAG_ORIGINATION_EXPIRE_DATETIME);
         return originationExpireDateTime;
     }
 
     public Date getUsageExpireDateTime() {
+        decode(KM_TAG_USAGE_EXPIRE_DATETIME);
         return usageExpireDateTime;
     }
 
     public Integer getUsageCountLimit() {
+        decode(KM_TAG_USAGE_COUNT_LIMIT);
         return usageCountLimit;
     }
 
     public Boolean getNoAuthRequired() {
+        decode(KM_TAG_NO_AUTH_REQUIRED);
         return noAuthRequired;
     }
 
     public Integer getUserAuthType() {
+        decode(KM_TAG_USER_AUTH_TYPE);
         return userAuthType;
     }
 
     public Integer getAuthTimeout() {
+        decode(KM_TAG_AUTH_TIMEOUT);
         return authTimeout;
     }
 
     public Boolean getAllowWhileOnBody() {
+        decode(KM_TAG_ALLOW_WHILE_ON_BODY);
         return allowWhileOnBody;
     }
 
     public Boolean getTrustedUserPresenceReq() {
+        decode(KM_TAG_TRUSTED_USER_PRESENCE_REQUIRED);
         return trustedUserPresenceReq;
     }
 
     public Boolean getTrustedConfirmationReq() {
+        decode(KM_TAG_TRUSTED_CONFIRMATION_REQUIRED);
         return trustedConfirmationReq;
     }
 
     public Boolean getUnlockedDeviceReq() {
+        decode(KM_TAG_UNLOCKED_DEVICE_REQUIRED);
         return unlockedDeviceReq;
     }
 
     public Boolean getAllApplications() {
+        decode(KM_TAG_ALL_APPLICATIONS);
         return allApplications;
     }
 
     public String getApplicationId() {
+        decode(KM_TAG_APPLICATION_ID);
         return applicationId;
     }
 
     public Date getCreationDateTime() {
+        decode(KM_TAG_CREATION_DATETIME);
         return creationDateTime;
     }
 
     public Integer getOrigin() {
+        decode(KM_TAG_ORIGIN);
         return origin;
     }
 
     public Boolean getRollbackResistant() {
+        decode(KM_TAG_ROLLBACK_RESISTANT);
         return rollbackResistant;
     }
 
     public RootOfTrust getRootOfTrust() {
+        decode(KM_TAG_ROOT_OF_TRUST);
         return rootOfTrust;
     }
 
     public Integer getOsVersion() {
+        decode(KM_TAG_OS_VERSION);
         return osVersion;
     }
 
     public Integer getOsPatchLevel() {
+        decode(KM_TAG_OS_PATCHLEVEL);
         return osPatchLevel;
     }
 
     public AttestationApplicationId getAttestationApplicationId() {
+        decode(KM_TAG_ATTESTATION_APPLICATION_ID);
         return attestationApplicationId;
     }
 
     public String getBrand() {
+        decode(KM_TAG_ATTESTATION_ID_BRAND);
         return brand;
     }
 
     public String getDevice() {
+        decode(KM_TAG_ATTESTATION_ID_DEVICE);
         return device;
     }
 
     public String getProduct() {
+        decode(KM_TAG_ATTESTATION_ID_PRODUCT);
         return product;
     }
 
     public String getSerialNumber() {
+        decode(KM_TAG_ATTESTATION_ID_SERIAL);
         return serialNumber;
     }
 
     public String getImei() {
+        decode(KM_TAG_ATTESTATION_ID_IMEI);
         return imei;
     }
 
     public String getMeid() {
+        decode(KM_TAG_ATTESTATION_ID_MEID);
         return meid;
     }
 
     public String getManufacturer() {
+        decode(KM_TAG_ATTESTATION_ID_MANUFACTURER);
         return manufacturer;
     }
 
     public String getModel() {
+        decode(KM_TAG_ATTESTATION_ID_MODEL);
         return model;
     }
 
     public Integer getVendorPatchLevel() {
+        decode(KM_TAG_VENDOR_PATCHLEVEL);
         return vendorPatchLevel;
     }
 
     public Integer getBootPatchLevel() {
+        decode(KM_TAG_BOOT_PATCHLEVEL);
         return bootPatchLevel;
     }
 
     public Boolean getDeviceUniqueAttestation() {
+        decode(KM_TAG_DEVICE_UNIQUE_ATTESTATION);
         return deviceUniqueAttestation;
     }
 
     public Boolean getIdentityCredentialKey() {
+        decode(KM_TAG_IDENTITY_CREDENTIAL_KEY);
         return identityCredentialKey;
     }
 
     public String getSecondImei() {
+        decode(KM_TAG_ATTESTATION_ID_SECOND_IMEI);
         return secondImei;
     }
 
     public byte[] getModuleHash() {
+        decode(KM_TAG_MODULE_HASH);
         return moduleHash;
     }
 
     @Override
     public String toString() {
+        for (var field : FIELDS) {
+            decode(field.number);
+        }
         StringBuilder s = new StringBuilder();
 
         if (algorithm != null) {
@@ -785,6 +895,10 @@ public class AuthorizationList {
             s.append("\nPurposes: ").append(purposesToString(purposes));
         }
 
+        if (blockModes != null && !blockModes.isEmpty()) {
+            s.append("\nBlock modes: ").append(blockModesToString(blockModes));
+        }
+
         if (digests != null && !digests.isEmpty()) {
             s.append("\nDigests: ").append(digestsToString(digests));
         }
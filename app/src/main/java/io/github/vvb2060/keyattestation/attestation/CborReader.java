@@ -0,0 +1,218 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateParsingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Pull reader over CBOR encoded data.
+ * <p>
+ * Each read consumes one data item and returns its value, containers only return their size
+ * and the caller reads their items in order. No data item tree is built, so a map can be
+ * dispatched on its keys while it is being read and unknown values skipped with
+ * {@link #skip()}. Only definite lengths are supported, which deterministic encoding requires.
+ */
+final class CborReader {
+    private static final int UNSIGNED_INTEGER = 0;
+    private static final int NEGATIVE_INTEGER = 1;
+    private static final int BYTE_STRING = 2;
+    private static final int UNICODE_STRING = 3;
+    private static final int ARRAY = 4;
+    private static final int MAP = 5;
+    private static final int TAG = 6;
+    private static final int SIMPLE_VALUE = 7;
+
+    private static final int FALSE = 20;
+    private static final int TRUE = 21;
+
+    private final byte[] data;
+    private int position;
+    private int major;
+    private long argument;
+
+    CborReader(byte[] data) {
+        this.data = data;
+    }
+
+    boolean hasNext() {
+        return position < data.length;
+    }
+
+    private void readHeader() throws CertificateParsingException {
+        if (position >= data.length) {
+            throw new CertificateParsingException("Unexpected end of CBOR data");
+        }
+        int initial = data[position++] & 0xff;
+        int info = initial & 0x1f;
+        major = initial >>> 5;
+        if (info < 24) {
+            argument = info;
+            return;
+        }
+        if (info > 27) {
+            throw new CertificateParsingException("Unsupported CBOR additional info " + info);
+        }
+        int count = 1 << info - 24;
+        if (count > data.length - position) {
+            throw new CertificateParsingException("Unexpected end of CBOR data");
+        }
+        long value = 0;
+        for (int i = 0; i < count; i++) {
+            value = value << 8 | data[position++] & 0xff;
+        }
+        argument = value;
+    }
+
+    private long readArgument(int type, String what) throws CertificateParsingException {
+        readHeader();
+        if (major != type) {
+            throw new CertificateParsingException("Expected " + what + ", found " + describe());
+        }
+        return argument;
+    }
+
+    /**
+     * @return the argument as a length of at most {@code unit}-byte items left in the data
+     */
+    private int length(int unit) throws CertificateParsingException {
+        if (argument < 0 || argument > (data.length - position) / unit) {
+            throw new CertificateParsingException("Unexpected end of CBOR data");
+        }
+        return (int) argument;
+    }
+
+    private String describe() {
+        return switch (major) {
+            case UNSIGNED_INTEGER, NEGATIVE_INTEGER -> "integer";
+            case BYTE_STRING -> "byte string";
+            case UNICODE_STRING -> "unicode string";
+            case ARRAY -> "array";
+            case MAP -> "map";
+            case TAG -> "tag " + argument;
+            default -> "simple value " + argument;
+        };
+    }
+
+    long readLong() throws CertificateParsingException {
+        readHeader();
+        if (major != UNSIGNED_INTEGER && major != NEGATIVE_INTEGER) {
+            throw new CertificateParsingException("Expected integer, found " + describe());
+        }
+        if (argument < 0) {
+            throw new CertificateParsingException("Integer out of bounds");
+        }
+        return major == UNSIGNED_INTEGER ? argument : -1 - argument;
+    }
+
+    int readInt() throws CertificateParsingException {
+        long value = readLong();
+        if (value != (int) value) {
+            throw new CertificateParsingException("Integer out of bounds");
+        }
+        return (int) value;
+    }
+
+    Date readDate() throws CertificateParsingException {
+        return new Date(readLong());
+    }
+
+    boolean readBoolean() throws CertificateParsingException {
+        readHeader();
+        if (major == SIMPLE_VALUE && argument == TRUE) {
+            return true;
+        } else if (major == SIMPLE_VALUE && argument == FALSE) {
+            return false;
+        }
+        throw new CertificateParsingException("Expected boolean, found " + describe());
+    }
+
+    byte[] readBytes() throws CertificateParsingException {
+        readArgument(BYTE_STRING, "byte string");
+        int length = length(1);
+        var bytes = Arrays.copyOfRange(data, position, position + length);
+        position += length;
+        return bytes;
+    }
+
+    /**
+     * @return a byte string decoded as UTF-8
+     */
+    String readByteString() throws CertificateParsingException {
+        readArgument(BYTE_STRING, "byte string");
+        int length = length(1);
+        var string = new String(data, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return string;
+    }
+
+    String readUnicodeString() throws CertificateParsingException {
+        readArgument(UNICODE_STRING, "unicode string");
+        int length = length(1);
+        var string = new String(data, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return string;
+    }
+
+    /**
+     * @return the number of items of the array, which follow this call
+     */
+    int readArraySize() throws CertificateParsingException {
+        readArgument(ARRAY, "array");
+        return length(1);
+    }
+
+    /**
+     * @return the number of entries of the map, each a key followed by its value
+     */
+    int readMapSize() throws CertificateParsingException {
+        readArgument(MAP, "map");
+        return length(2);
+    }
+
+    KmEnumSet readEnumSet() throws CertificateParsingException {
+        var builder = new KmEnumSet.Builder();
+        for (int n = readArraySize(); n > 0; n--) {
+            int value = readInt();
+            if (value < 0) {
+                throw new CertificateParsingException("Negative enum value " + value);
+            }
+            builder.add(value);
+        }
+        return builder.build();
+    }
+
+    List<Boolean> readBooleanList() throws CertificateParsingException {
+        int size = readArraySize();
+        var values = new ArrayList<Boolean>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readBoolean());
+        }
+        return values;
+    }
+
+    /**
+     * Consumes the next data item, including the items it contains.
+     */
+    void skip() throws CertificateParsingException {
+        readHeader();
+        switch (major) {
+            case BYTE_STRING, UNICODE_STRING -> position += length(1);
+            case ARRAY -> {
+                for (int n = length(1); n > 0; n--) skip();
+            }
+            case MAP -> {
+                for (int n = length(2); n > 0; n--) {
+                    skip();
+                    skip();
+                }
+            }
+            case TAG -> skip();
+            default -> {
+                // Integers, simple values and floats have no content after the header.
+            }
+        }
+    }
+}
@@ -7,7 +7,10 @@ import java.security.PublicKey;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import io.github.vvb2060.keyattestation.AppApplication;
 
@@ -26,11 +29,19 @@ public class CertificateInfo {
     private CertificateParsingException certException;
 
     private ProvisioningInfo provisioningInfo;
+    private ExtensionIndex extensions;
 
     private CertificateInfo(X509Certificate cert) {
         this.cert = cert;
     }
 
+    private ExtensionIndex getExtensions() throws CertificateParsingException {
+        if (extensions == null) {
+            extensions = ExtensionIndex.of(cert);
+        }
+        return extensions;
+    }
+
     public X509Certificate getCert() {
         return cert;
     }
@@ -67,9 +78,9 @@ public class CertificateInfo {
     private void checkStatus(PublicKey parentKey) {
         try {
             status = CERT_SIGN;
-            cert.verify(parentKey);
+            VerificationCache.verify(cert, parentKey);
             status = CERT_REVOKED;
-            var certStatus = RevocationList.get(cert.getSerialNumber());
+            var certStatus = getExtensions().getRevocation();
             if (certStatus != null) {
                 throw new CertificateException("Certificate revocation " + certStatus);
             }
@@ -77,7 +88,6 @@ public class CertificateInfo {
             cert.checkValidity();
             status = CERT_NORMAL;
         } catch (GeneralSecurityException e) {
-            Log.e(AppApplication.TAG, "checkStatus", e);
             securityException = e;
         }
     }
@@ -85,7 +95,7 @@ public class CertificateInfo {
     private boolean checkAttestation() {
         boolean terminate;
         try {
-            attestation = Attestation.loadFromCertificate(cert);
+            var attestation = Attestation.loadFromExtensions(getExtensions());
             // If key purpose included KeyPurpose::SIGN,
             // then it could be used to sign arbitrary data, including any tbsCertificate,
             // and so an attestation produced by the key would have no security properties.
@@ -93,6 +103,9 @@ public class CertificateInfo {
             // then the child certificate can be trusted.
             var purposes = attestation.getTeeEnforced().getPurposes();
             terminate = purposes == null || !purposes.contains(AuthorizationList.KM_PURPOSE_ATTEST_KEY);
+            // Attest key certificates are only walked through, the rest is decoded on demand.
+            if (terminate) attestation.decodeAuthorizationLists();
+            this.attestation = attestation;
         } catch (CertificateParsingException e) {
             certException = e;
             terminate = false;
@@ -101,21 +114,81 @@ public class CertificateInfo {
         return terminate;
     }
 
+    private static CertificateInfo verify(X509Certificate cert, X509Certificate parent) {
+        var info = new CertificateInfo(cert);
+        info.checkStatus(parent.getPublicKey());
+        if (parent == cert) {
+            info.checkIssuer();
+        }
+        return info;
+    }
+
+    /**
+     * Reports the outcome of {@link #verify} and parses the attestation, once the certificate
+     * is known to be part of the result.
+     *
+     * @return whether the walk stops at this certificate
+     */
+    private boolean accept() {
+        if (securityException != null) {
+            Log.e(AppApplication.TAG, "checkStatus", securityException);
+        }
+        return checkAttestation();
+    }
+
     public static void parse(List<X509Certificate> certs, List<CertificateInfo> infoList) {
         var parent = certs.get(certs.size() - 1);
         for (int i = certs.size() - 1; i >= 0; i--) {
-            var parentKey = parent.getPublicKey();
-            var info = new CertificateInfo(certs.get(i));
+            var cert = certs.get(i);
+            var info = verify(cert, parent);
             infoList.add(info);
-            info.checkStatus(parentKey);
-            if (parent == info.cert) {
-                info.checkIssuer();
-            } else {
-                parent = info.cert;
-            }
-            if (info.checkAttestation()) {
+            parent = cert;
+            if (info.accept()) {
                 break;
             }
         }
     }
+
+    /**
+     * Same as {@link #parse(List, List)}, but the signatures of every certificate are verified
+     * on {@code executor} concurrently. Attestations are parsed from the root down, each once
+     * the one above it did not stop the walk, so certificates past the last one are never
+     * parsed, and their verification is discarded without being logged.
+     *
+     * @return a future of the parsed certificates, which never blocks a thread of the executor
+     */
+    public static CompletableFuture<List<CertificateInfo>> parse(List<X509Certificate> certs,
+                                                                 Executor executor) {
+        var futures = new ArrayList<CompletableFuture<CertificateInfo>>(certs.size());
+        var parent = certs.get(certs.size() - 1);
+        for (int i = certs.size() - 1; i >= 0; i--) {
+            var cert = certs.get(i);
+            var p = parent;
+            futures.add(CompletableFuture.supplyAsync(() -> verify(cert, p), executor));
+            parent = cert;
+        }
+        var infoList = new ArrayList<CertificateInfo>(certs.size());
+        return collect(futures, 0, infoList, executor).whenComplete((result, e) -> {
+            for (var future : futures) {
+                future.cancel(false);
+            }
+        });
+    }
+
+    private static CompletableFuture<List<CertificateInfo>> collect(
+            List<CompletableFuture<CertificateInfo>> futures, int index,
+            List<CertificateInfo> infoList, Executor executor) {
+        if (index == futures.size()) {
+            return CompletableFuture.completedFuture(infoList);
+        }
+        return futures.get(index).thenApplyAsync(info -> {
+            infoList.add(info);
+            return info.accept();
+        }, executor).thenCompose(terminate -> {
+            if (terminate) {
+                return CompletableFuture.completedFuture(infoList);
+            }
+            return collect(futures, index + 1, infoList, executor);
+        });
+    }
 }
@@ -0,0 +1,320 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateParsingException;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Cursor over DER encoded data that decodes elements in place.
+ * <p>
+ * {@link #next()} moves to the next element of the current level and decodes its header, the
+ * value accessors then read the content straight from the underlying array. Nothing is copied
+ * unless a value is returned as a new array, and no object tree is built: entering a
+ * constructed element returns a cursor over the same array.
+ */
+final class DerReader {
+    static final int BOOLEAN = 0x01;
+    static final int INTEGER = 0x02;
+    static final int OCTET_STRING = 0x04;
+    static final int OBJECT_IDENTIFIER = 0x06;
+    static final int ENUMERATED = 0x0a;
+    static final int PRINTABLE_STRING = 0x13;
+    static final int SEQUENCE = 0x30;
+    static final int SET = 0x31;
+
+    private static final int CLASS_MASK = 0xc0;
+    private static final int CONTEXT_SPECIFIC = 0x80;
+    private static final int CONSTRUCTED = 0x20;
+
+    private final byte[] data;
+    private final int end;
+    private int position;
+    private int start;
+    private int tag = -1;
+    private int tagNo;
+    private int offset;
+    private int length;
+
+    DerReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    DerReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    boolean hasNext() {
+        return position < end;
+    }
+
+    /**
+     * Moves to the next element of this level.
+     */
+    DerReader next() throws CertificateParsingException {
+        position = readHeader(position, end);
+        return this;
+    }
+
+    /**
+     * Moves to the next element of this level and checks its tag.
+     */
+    DerReader next(int tag, String what) throws CertificateParsingException {
+        next();
+        require(tag, what);
+        return this;
+    }
+
+    /**
+     * Replaces the current explicitly tagged element by the single element it wraps.
+     */
+    DerReader unwrap() throws CertificateParsingException {
+        if (!isExplicitTag()) {
+            throw new CertificateParsingException("Expected tagged object, found " + describe());
+        }
+        int limit = offset + length;
+        if (readHeader(offset, limit) != limit) {
+            throw new CertificateParsingException("Expected one element in tag [" + tagNo + "]");
+        }
+        return this;
+    }
+
+    /**
+     * @return a cursor over the content of the current element, which must have the given tag
+     */
+    DerReader enter(int tag, String what) throws CertificateParsingException {
+        require(tag, what);
+        return new DerReader(data, offset, length);
+    }
+
+    private int readHeader(int p, int limit) throws CertificateParsingException {
+        int start = p;
+        if (p >= limit) {
+            throw new CertificateParsingException("Unexpected end of DER data");
+        }
+        int id = data[p++] & 0xff;
+        int number = id & 0x1f;
+        if (number == 0x1f) {
+            number = 0;
+            int b;
+            do {
+                if (p >= limit || number > Integer.MAX_VALUE >> 7) {
+                    throw new CertificateParsingException("Malformed DER tag");
+                }
+                b = data[p++] & 0xff;
+                number = number << 7 | b & 0x7f;
+            } while ((b & 0x80) != 0);
+        }
+        if (p >= limit) {
+            throw new CertificateParsingException("Unexpected end of DER data");
+        }
+        int len = data[p++] & 0xff;
+        if (len > 0x7f) {
+            int count = len & 0x7f;
+            if (count == 0 || count > 4 || count > limit - p) {
+                throw new CertificateParsingException("Malformed DER length");
+            }
+            len = 0;
+            for (int i = 0; i < count; i++) {
+                len = len << 8 | data[p++] & 0xff;
+            }
+        }
+        if (len < 0 || len > limit - p) {
+            throw new CertificateParsingException("Unexpected end of DER data");
+        }
+        this.start = start;
+        tag = id;
+        tagNo = number;
+        offset = p;
+        length = len;
+        return p + len;
+    }
+
+    void require(int tag, String what) throws CertificateParsingException {
+        if (this.tag != tag) {
+            throw new CertificateParsingException("Expected " + what + ", found " + describe());
+        }
+    }
+
+    /**
+     * @return the identifier octet of the current element
+     */
+    int tag() {
+        return tag;
+    }
+
+    /**
+     * @return the tag number of the current element, without class and constructed bits
+     */
+    int tagNo() {
+        return tagNo;
+    }
+
+    byte[] data() {
+        return data;
+    }
+
+    /**
+     * @return offset of the header of the current element in {@link #data()}
+     */
+    int elementStart() {
+        return start;
+    }
+
+    /**
+     * @return offset just after the content of the current element in {@link #data()}
+     */
+    int elementEnd() {
+        return offset + length;
+    }
+
+    /**
+     * @return offset of the content of the current element in {@link #data()}
+     */
+    int contentOffset() {
+        return offset;
+    }
+
+    int contentLength() {
+        return length;
+    }
+
+    boolean isExplicitTag() {
+        return (tag & (CLASS_MASK | CONSTRUCTED)) == (CONTEXT_SPECIFIC | CONSTRUCTED);
+    }
+
+    String describe() {
+        return switch (tag) {
+            case BOOLEAN -> "boolean";
+            case INTEGER -> "integer";
+            case OCTET_STRING -> "octet string";
+            case OBJECT_IDENTIFIER -> "object identifier";
+            case ENUMERATED -> "enumerated";
+            case PRINTABLE_STRING -> "printable string";
+            case SEQUENCE -> "sequence";
+            case SET -> "set";
+            default -> (tag & CLASS_MASK) == CONTEXT_SPECIFIC
+                    ? "[" + tagNo + "]" : "tag 0x" + Integer.toHexString(tag);
+        };
+    }
+
+    private long getNonNegative(long max) throws CertificateParsingException {
+        if (length == 0) {
+            throw new CertificateParsingException("Malformed integer");
+        }
+        int p = offset;
+        int limit = offset + length;
+        if (length > 1 && (data[p] == 0 && data[p + 1] >= 0
+                || data[p] == -1 && data[p + 1] < 0)) {
+            throw new CertificateParsingException("Malformed integer");
+        }
+        if (data[p] < 0) {
+            throw new CertificateParsingException("INTEGER out of bounds");
+        }
+        if (data[p] == 0) {
+            p++;
+        }
+        if (limit - p > Long.BYTES) {
+            throw new CertificateParsingException("INTEGER out of bounds");
+        }
+        long value = 0;
+        while (p < limit) {
+            value = value << 8 | data[p++] & 0xff;
+        }
+        if (value < 0 || value > max) {
+            throw new CertificateParsingException("INTEGER out of bounds");
+        }
+        return value;
+    }
+
+    /**
+     * @return the current INTEGER or ENUMERATED, which must fit a non-negative int
+     */
+    int getInt() throws CertificateParsingException {
+        if (tag != INTEGER && tag != ENUMERATED) {
+            throw new CertificateParsingException("Integer value expected, " + describe()
+                    + " found.");
+        }
+        return (int) getNonNegative(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the current INTEGER, which must fit a non-negative long
+     */
+    long getLong() throws CertificateParsingException {
+        if (tag != INTEGER) {
+            throw new CertificateParsingException("Integer value expected, " + describe()
+                    + " found.");
+        }
+        return getNonNegative(Long.MAX_VALUE);
+    }
+
+    Date getDate() throws CertificateParsingException {
+        return new Date(getLong());
+    }
+
+    boolean getBoolean() throws CertificateParsingException {
+        require(BOOLEAN, "boolean");
+        if (length == 1 && data[offset] == 0) {
+            return false;
+        } else if (length == 1 && data[offset] == -1) {
+            return true;
+        }
+        throw new CertificateParsingException(
+                "DER-encoded boolean values must contain either 0x00 or 0xFF");
+    }
+
+    byte[] getOctets() throws CertificateParsingException {
+        require(OCTET_STRING, "octet string");
+        return Arrays.copyOfRange(data, offset, offset + length);
+    }
+
+    /**
+     * @return the current OBJECT IDENTIFIER in dotted form
+     */
+    String getOid() throws CertificateParsingException {
+        require(OBJECT_IDENTIFIER, "object identifier");
+        int limit = offset + length;
+        if (length == 0 || data[limit - 1] < 0) {
+            throw new CertificateParsingException("Malformed object identifier");
+        }
+        var oid = new StringBuilder();
+        long arc = 0;
+        for (int p = offset; p < limit; p++) {
+            if (arc > Long.MAX_VALUE >> 7) {
+                throw new CertificateParsingException("Malformed object identifier");
+            }
+            arc = arc << 7 | data[p] & 0x7f;
+            if (data[p] < 0) {
+                continue;
+            }
+            if (oid.length() == 0) {
+                int first = arc < 80 ? (int) arc / 40 : 2;
+                oid.append(first).append('.').append(arc - first * 40L);
+            } else {
+                oid.append('.').append(arc);
+            }
+            arc = 0;
+        }
+        return oid.toString();
+    }
+
+    String getUtf8() throws CertificateParsingException {
+        require(OCTET_STRING, "octet string");
+        return new String(data, offset, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the values of the current SET OF INTEGER
+     */
+    KmEnumSet getEnumSet() throws CertificateParsingException {
+        var set = enter(SET, "set");
+        var builder = new KmEnumSet.Builder();
+        while (set.hasNext()) {
+            builder.add(set.next().getInt());
+        }
+        return builder.build();
+    }
+}
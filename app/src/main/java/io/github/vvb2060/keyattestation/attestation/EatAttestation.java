@@ -18,89 +18,81 @@ package io.github.vvb2060.keyattestation.attestation;
 
 import android.util.Log;
 
-import co.nstant.in.cbor.CborDecoder;
-import co.nstant.in.cbor.CborException;
-import co.nstant.in.cbor.model.DataItem;
-import co.nstant.in.cbor.model.Map;
-import co.nstant.in.cbor.model.Number;
-import co.nstant.in.cbor.model.UnicodeString;
-
-import org.bouncycastle.asn1.ASN1Encodable;
+import com.google.common.io.BaseEncoding;
 
 import java.security.cert.CertificateParsingException;
-import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.List;
 
 public class EatAttestation extends Attestation {
     static final String TAG = "EatAttestation";
-    final Map extension;
+    final byte[] extension;
     final RootOfTrust rootOfTrust;
 
     /**
-     * Constructs an {@code EatAttestation} object from the provided {@link X509Certificate},
-     * extracting the attestation data from the attestation extension.
+     * Constructs an {@code EatAttestation} object from the indexed extensions of a
+     * certificate, extracting the attestation data from the attestation extension.
      *
      * @throws CertificateParsingException if the certificate does not contain a properly-formatted
      *     attestation extension.
      */
-    public EatAttestation(X509Certificate x509Cert)
-            throws CertificateParsingException, CborException {
-        super(x509Cert);
-        extension = getEatExtension(x509Cert);
+    EatAttestation(ExtensionIndex extensions) throws CertificateParsingException {
+        super(extensions);
+        extension = getEatExtension(extensions);
+        CborReader reader = new CborReader(extension);
 
         RootOfTrust.Builder rootOfTrustBuilder = new RootOfTrust.Builder();
         List<Boolean> bootState = null;
         boolean officialBuild = false;
 
-        for (DataItem key : extension.getKeys()) {
-            int keyInt = ((Number) key).getValue().intValue();
-            switch (keyInt) {
+        for (int n = reader.readMapSize(); n > 0; n--) {
+            int key = reader.readInt();
+            switch (key) {
                 default:
                     throw new CertificateParsingException(
                             "Unknown EAT tag: " + key + "\n in EAT extension:\n" + this);
 
                 case EatClaim.ATTESTATION_VERSION:
-                    attestationVersion = CborUtils.getInt(extension, key);
+                    attestationVersion = reader.readInt();
                     break;
                 case EatClaim.KEYMASTER_VERSION:
-                    keymasterVersion = CborUtils.getInt(extension, key);
+                    keymasterVersion = reader.readInt();
                     break;
                 case EatClaim.SECURITY_LEVEL:
                     keymasterSecurityLevel =
-                            eatSecurityLevelToKeymintSecurityLevel(
-                                    CborUtils.getInt(extension, key));
+                            eatSecurityLevelToKeymintSecurityLevel(reader.readInt());
                     break;
                 case EatClaim.SUBMODS:
-                    Map submods = (Map) extension.get(key);
-                    softwareEnforced =
-                            new AuthorizationList(
-                                    (Map) submods.get(new UnicodeString(EatClaim.SUBMOD_SOFTWARE)));
-                    teeEnforced =
-                            new AuthorizationList(
-                                    (Map) submods.get(new UnicodeString(EatClaim.SUBMOD_TEE)));
+                    for (int m = reader.readMapSize(); m > 0; m--) {
+                        switch (reader.readUnicodeString()) {
+                            case EatClaim.SUBMOD_SOFTWARE ->
+                                    softwareEnforced = new AuthorizationList(reader);
+                            case EatClaim.SUBMOD_TEE -> teeEnforced = new AuthorizationList(reader);
+                            default -> reader.skip();
+                        }
+                    }
                     break;
                 case EatClaim.VERIFIED_BOOT_KEY:
-                    rootOfTrustBuilder.setVerifiedBootKey(CborUtils.getBytes(extension, key));
+                    rootOfTrustBuilder.setVerifiedBootKey(reader.readBytes());
                     break;
                 case EatClaim.DEVICE_LOCKED:
-                    rootOfTrustBuilder.setDeviceLocked(CborUtils.getBoolean(extension, key));
+                    rootOfTrustBuilder.setDeviceLocked(reader.readBoolean());
                     break;
                 case EatClaim.BOOT_STATE:
-                    bootState = CborUtils.getBooleanList(extension, key);
+                    bootState = reader.readBooleanList();
                     break;
                 case EatClaim.OFFICIAL_BUILD:
-                    officialBuild = CborUtils.getBoolean(extension, key);
+                    officialBuild = reader.readBoolean();
                     break;
                 case EatClaim.NONCE:
-                    attestationChallenge = CborUtils.getBytes(extension, key);
+                    attestationChallenge = reader.readBytes();
                     break;
                 case EatClaim.CTI:
-                    Log.i(TAG, "Got CTI claim: " + Arrays.toString(CborUtils.getBytes(extension, key)));
-                    uniqueId = CborUtils.getBytes(extension, key);
+                    uniqueId = reader.readBytes();
+                    Log.i(TAG, "Got CTI claim: " + Arrays.toString(uniqueId));
                     break;
                 case EatClaim.VERIFIED_BOOT_HASH:
-                    rootOfTrustBuilder.setVerifiedBootHash(CborUtils.getBytes(extension, key));
+                    rootOfTrustBuilder.setVerifiedBootHash(reader.readBytes());
                     break;
             }
         }
@@ -128,18 +120,16 @@ public class EatAttestation extends Attestation {
     }
 
     public String toString() {
-        return super.toString() + "\nEncoded CBOR: " + extension;
+        return super.toString() + "\nEncoded CBOR: "
+                + BaseEncoding.base16().lowerCase().encode(extension);
     }
 
-    Map getEatExtension(X509Certificate x509Cert)
-            throws CertificateParsingException, CborException {
-        byte[] attestationExtensionBytes = x509Cert.getExtensionValue(Attestation.EAT_OID);
-        if (attestationExtensionBytes == null || attestationExtensionBytes.length == 0) {
+    byte[] getEatExtension(ExtensionIndex extensions) throws CertificateParsingException {
+        byte[] cborBytes = extensions.getValue(Attestation.EAT_OID);
+        if (cborBytes == null || cborBytes.length == 0) {
             throw new CertificateParsingException("Did not find extension with OID " + EAT_OID);
         }
-        ASN1Encodable asn1 = Asn1Utils.getAsn1EncodableFromBytes(attestationExtensionBytes);
-        byte[] cborBytes = Asn1Utils.getByteArrayFromAsn1(asn1);
-        return (Map) CborUtils.decodeCbor(cborBytes);
+        return cborBytes;
     }
 
     static int eatSecurityLevelToKeymintSecurityLevel(int eatSecurityLevel) {
@@ -0,0 +1,125 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extensions of a certificate, found by a single walk over its TBSCertificate encoding.
+ * <p>
+ * Each entry records the OID, the critical flag and where the value lies in the encoding, so
+ * looking an extension up does not re-encode the certificate, and an extension value can be
+ * parsed in place with {@link #getReader(String)}. The walk also records where the serial
+ * number lies, for looking it up in the revocation list without decoding it.
+ */
+final class ExtensionIndex {
+    private static final int VERSION_TAG = 0;
+    private static final int EXTENSIONS_TAG = 3;
+
+    private record Entry(String oid, boolean critical, int start, int end) {
+    }
+
+    private final byte[] encoded;
+    private final List<Entry> entries = new ArrayList<>();
+    private final int serialOffset;
+    private final int serialLength;
+
+    private ExtensionIndex(byte[] encoded) throws CertificateParsingException {
+        this.encoded = encoded;
+        var tbs = new DerReader(encoded).next().enter(DerReader.SEQUENCE, "TBSCertificate");
+        tbs.next();
+        if (tbs.isExplicitTag() && tbs.tagNo() == VERSION_TAG) {
+            tbs.next();
+        }
+        tbs.require(DerReader.INTEGER, "serial number");
+        serialOffset = tbs.contentOffset();
+        serialLength = tbs.contentLength();
+        while (tbs.hasNext()) {
+            tbs.next();
+            if (tbs.isExplicitTag() && tbs.tagNo() == EXTENSIONS_TAG) {
+                index(tbs.unwrap().enter(DerReader.SEQUENCE, "sequence for extensions"));
+                break;
+            }
+        }
+    }
+
+    static ExtensionIndex of(X509Certificate cert) throws CertificateParsingException {
+        try {
+            return new ExtensionIndex(cert.getTBSCertificate());
+        } catch (CertificateEncodingException e) {
+            throw new CertificateParsingException(e);
+        }
+    }
+
+    private void index(DerReader extensions) throws CertificateParsingException {
+        while (extensions.hasNext()) {
+            var extension = extensions.next().enter(DerReader.SEQUENCE, "sequence for extension");
+            var oid = extension.next().getOid();
+            boolean critical = false;
+            if (extension.next().tag() == DerReader.BOOLEAN) {
+                critical = extension.getBoolean();
+                extension.next();
+            }
+            extension.require(DerReader.OCTET_STRING, "octet string for extension value");
+            entries.add(new Entry(oid, critical,
+                    extension.elementStart(), extension.elementEnd()));
+        }
+    }
+
+    private Entry find(String oid) {
+        for (var entry : entries) {
+            if (entry.oid.equals(oid)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the revocation status of the certificate, or null if it is not revoked
+     */
+    RevocationList getRevocation() {
+        return RevocationList.get(encoded, serialOffset, serialLength);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    String getOid(int index) {
+        return entries.get(index).oid;
+    }
+
+    boolean isCritical(int index) {
+        return entries.get(index).critical;
+    }
+
+    boolean contains(String oid) {
+        return find(oid) != null;
+    }
+
+    /**
+     * @return a cursor over the DER content of the extension value, or null if it is absent
+     */
+    DerReader getReader(String oid) throws CertificateParsingException {
+        var entry = find(oid);
+        if (entry == null) {
+            return null;
+        }
+        return new DerReader(encoded, entry.start, entry.end - entry.start).next()
+                .enter(DerReader.OCTET_STRING, "octet stream");
+    }
+
+    /**
+     * @return a copy of the extension value, or null if it is absent
+     */
+    byte[] getValue(String oid) throws CertificateParsingException {
+        var entry = find(oid);
+        if (entry == null) {
+            return null;
+        }
+        return new DerReader(encoded, entry.start, entry.end - entry.start).next().getOctets();
+    }
+}
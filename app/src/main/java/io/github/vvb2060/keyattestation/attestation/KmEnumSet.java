@@ -0,0 +1,154 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable set of KeyMint enum values, such as purposes, digests, padding or block modes.
+ * <p>
+ * Values below 128 are bits of two longs, so {@link #contains(int)} is a bit test. Larger
+ * values, which none of these enums define, are kept in a sorted array. Values are visited in
+ * ascending order, {@link #next(int)} and {@link #forEachInt(IntConsumer)} do not allocate.
+ */
+public final class KmEnumSet extends AbstractSet<Integer> {
+    private static final int[] NO_VALUES = new int[0];
+
+    public static final KmEnumSet EMPTY = new KmEnumSet(0, 0, NO_VALUES);
+
+    private final long low;
+    private final long high;
+    private final int[] others;
+    private final int size;
+
+    private KmEnumSet(long low, long high, int[] others) {
+        this.low = low;
+        this.high = high;
+        this.others = others;
+        this.size = Long.bitCount(low) + Long.bitCount(high) + others.length;
+    }
+
+    public static KmEnumSet of(int... values) {
+        var builder = new Builder();
+        for (int value : values) {
+            builder.add(value);
+        }
+        return builder.build();
+    }
+
+    public boolean contains(int value) {
+        if (value >= 0 && value < 64) {
+            return (low & 1L << value) != 0;
+        } else if (value >= 64 && value < 128) {
+            return (high & 1L << value - 64) != 0;
+        }
+        return Arrays.binarySearch(others, value) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Integer value && contains(value.intValue());
+    }
+
+    /**
+     * Iteration starts at {@code next(0)} and continues at {@code next(value + 1)}.
+     *
+     * @return the smallest value that is at least {@code from}, or -1 if there is none
+     */
+    public int next(int from) {
+        if (from < 0) {
+            return -1;
+        }
+        if (from < 64) {
+            long bits = low & -1L << from;
+            if (bits != 0) {
+                return Long.numberOfTrailingZeros(bits);
+            }
+            from = 64;
+        }
+        if (from < 128) {
+            long bits = high & -1L << from - 64;
+            if (bits != 0) {
+                return 64 + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        for (int value : others) {
+            if (value >= from) {
+                return value;
+            }
+        }
+        return -1;
+    }
+
+    public void forEachInt(IntConsumer action) {
+        for (int value = next(0); value >= 0; value = next(value + 1)) {
+            action.accept(value);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<>() {
+            private int value = KmEnumSet.this.next(0);
+
+            @Override
+            public boolean hasNext() {
+                return value >= 0;
+            }
+
+            @Override
+            public Integer next() {
+                if (value < 0) {
+                    throw new NoSuchElementException();
+                }
+                int current = value;
+                value = KmEnumSet.this.next(current + 1);
+                return current;
+            }
+        };
+    }
+
+    static final class Builder {
+        private long low;
+        private long high;
+        private int[] others = NO_VALUES;
+
+        /**
+         * @param value a non-negative enum value, added once however often it is passed
+         */
+        Builder add(int value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Negative enum value " + value);
+            } else if (value < 64) {
+                low |= 1L << value;
+            } else if (value < 128) {
+                high |= 1L << value - 64;
+            } else {
+                int index = Arrays.binarySearch(others, value);
+                if (index < 0) {
+                    index = -index - 1;
+                    var values = new int[others.length + 1];
+                    System.arraycopy(others, 0, values, 0, index);
+                    values[index] = value;
+                    System.arraycopy(others, index, values, index + 1, others.length - index);
+                    others = values;
+                }
+            }
+            return this;
+        }
+
+        KmEnumSet build() {
+            if (low == 0 && high == 0 && others.length == 0) {
+                return EMPTY;
+            }
+            return new KmEnumSet(low, high, others);
+        }
+    }
+}
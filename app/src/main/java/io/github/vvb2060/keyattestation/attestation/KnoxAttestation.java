@@ -6,7 +6,6 @@ import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.ASN1TaggedObject;
 
 import java.security.cert.CertificateParsingException;
-import java.security.cert.X509Certificate;
 
 // https://docs.samsungknox.com/dev/knox-attestation/
 public class KnoxAttestation extends Asn1Attestation {
@@ -20,9 +19,9 @@ public class KnoxAttestation extends Asn1Attestation {
     private IntegrityStatus knoxIntegrity;
     private byte[] recordHash;
 
-    public KnoxAttestation(X509Certificate x509Cert) throws CertificateParsingException {
-        super(x509Cert);
-        ASN1Sequence knoxExtSeq = getKnoxExtensionSequence(x509Cert);
+    KnoxAttestation(ExtensionIndex extensions) throws CertificateParsingException {
+        super(extensions);
+        ASN1Sequence knoxExtSeq = getKnoxExtensionSequence(extensions);
         for (var entry : knoxExtSeq) {
             if (!(entry instanceof ASN1TaggedObject taggedObject)) {
                 throw new CertificateParsingException(
@@ -40,13 +39,18 @@ public class KnoxAttestation extends Asn1Attestation {
         }
     }
 
-    ASN1Sequence getKnoxExtensionSequence(X509Certificate x509Cert)
+    ASN1Sequence getKnoxExtensionSequence(ExtensionIndex extensions)
             throws CertificateParsingException {
-        byte[] knoxExtensionSequence = x509Cert.getExtensionValue(KNOX_OID);
+        byte[] knoxExtensionSequence = extensions.getValue(KNOX_OID);
         if (knoxExtensionSequence == null || knoxExtensionSequence.length == 0) {
             throw new CertificateParsingException("Did not find extension with OID " + KNOX_OID);
         }
-        return Asn1Utils.getAsn1SequenceFromBytes(knoxExtensionSequence);
+        var encodable = Asn1Utils.getAsn1EncodableFromBytes(knoxExtensionSequence);
+        if (!(encodable instanceof ASN1Sequence sequence)) {
+            throw new CertificateParsingException("Expected sequence, found "
+                    + (encodable == null ? "nothing" : encodable.getClass().getName()));
+        }
+        return sequence;
     }
 
     public String getKnoxChallenge() {
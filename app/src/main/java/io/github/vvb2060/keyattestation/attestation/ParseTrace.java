@@ -0,0 +1,102 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import android.util.Log;
+
+import com.google.common.io.BaseEncoding;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.github.vvb2060.keyattestation.AppApplication;
+
+/**
+ * Diagnostics of the authorization list parser, enabled in debug builds.
+ * <p>
+ * While disabled the parser only reads a volatile flag per list and per error. Once enabled,
+ * the tags of one list in every {@code sampleRate} are counted, failures are counted, and the
+ * raw encoding of a tag that fails to parse can be logged.
+ */
+public final class ParseTrace {
+    private static final AtomicLong lists = new AtomicLong();
+    private static final Map<Integer, LongAdder> tags = new ConcurrentHashMap<>();
+    private static final LongAdder errors = new LongAdder();
+
+    private static volatile boolean enabled;
+    private static volatile int sampleRate = 1;
+    private static volatile boolean dumpOnError;
+
+    private ParseTrace() {
+    }
+
+    /**
+     * @param sampleRate  count the tags of one list out of this many, 1 counts every list
+     * @param dumpOnError log the encoding of tags that fail to parse
+     */
+    public static void enable(int sampleRate, boolean dumpOnError) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("sampleRate " + sampleRate);
+        }
+        ParseTrace.sampleRate = sampleRate;
+        ParseTrace.dumpOnError = dumpOnError;
+        enabled = true;
+    }
+
+    public static void disable() {
+        enabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return whether the tags of the list about to be parsed should be passed to {@link #tag}
+     */
+    static boolean sample() {
+        return enabled && lists.getAndIncrement() % sampleRate == 0;
+    }
+
+    static void tag(int tag) {
+        tags.computeIfAbsent(tag, k -> new LongAdder()).increment();
+    }
+
+    static void error(int tag, byte[] data, int start, int end, Exception e) {
+        if (!enabled) {
+            return;
+        }
+        errors.increment();
+        if (dumpOnError) {
+            var hex = BaseEncoding.base16().lowerCase().encode(data, start, end - start);
+            Log.w(AppApplication.TAG, "Failed to parse tag [" + tag + "]: " + hex, e);
+        }
+    }
+
+    /**
+     * @return number of times each tag number was seen in sampled lists
+     */
+    public static Map<Integer, Long> tagCounts() {
+        var counts = new TreeMap<Integer, Long>();
+        tags.forEach((tag, count) -> counts.put(tag, count.sum()));
+        return counts;
+    }
+
+    /**
+     * @return number of lists seen while enabled, sampled or not
+     */
+    public static long listCount() {
+        return lists.get();
+    }
+
+    public static long errorCount() {
+        return errors.sum();
+    }
+
+    public static void reset() {
+        lists.set(0);
+        tags.clear();
+        errors.reset();
+    }
+}
@@ -5,9 +5,6 @@ import android.util.Log;
 import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
 
-import co.nstant.in.cbor.CborException;
-import co.nstant.in.cbor.model.Map;
-import co.nstant.in.cbor.model.Number;
 import io.github.vvb2060.keyattestation.AppApplication;
 
 public class ProvisioningInfo {
@@ -16,13 +13,16 @@ public class ProvisioningInfo {
     private Integer certsIssued;
     private String manufacturer;
 
-    private ProvisioningInfo(Map map) {
-        for (var key : map.getKeys()) {
-            switch (((Number) key).getValue().intValue()) {
-                case 1 -> certsIssued = CborUtils.getInt(map, key);
-                case 3 -> manufacturer = CborUtils.getUnicodeString(map, key);
-                default -> Log.w(AppApplication.TAG, "new provisioning info: "
-                        + key + " = " + map.get(key));
+    private ProvisioningInfo(CborReader reader) throws CertificateParsingException {
+        for (int n = reader.readMapSize(); n > 0; n--) {
+            int key = reader.readInt();
+            switch (key) {
+                case 1 -> certsIssued = reader.readInt();
+                case 3 -> manufacturer = reader.readUnicodeString();
+                default -> {
+                    reader.skip();
+                    Log.w(AppApplication.TAG, "new provisioning info: " + key);
+                }
             }
         }
     }
@@ -31,11 +31,9 @@ public class ProvisioningInfo {
         var bytes = cert.getExtensionValue(OID);
         if (bytes == null) return null;
         try {
-            var asn1 = Asn1Utils.getAsn1EncodableFromBytes(bytes);
-            var cborBytes = Asn1Utils.getByteArrayFromAsn1(asn1);
-            var map = (Map) CborUtils.decodeCbor(cborBytes);
-            return new ProvisioningInfo(map);
-        } catch (CborException | CertificateParsingException e) {
+            var cborBytes = new DerReader(bytes).next().getOctets();
+            return new ProvisioningInfo(new CborReader(cborBytes));
+        } catch (CertificateParsingException e) {
             Log.e(AppApplication.TAG, "decode", e);
             return null;
         }
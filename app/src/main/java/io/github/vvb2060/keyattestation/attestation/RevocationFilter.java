@@ -0,0 +1,167 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Register-blocked Bloom filter over serial number magnitudes.
+ * <p>
+ * All probes of a key fall into one 64-bit word, so a lookup is one hash over the serial
+ * bytes and a single memory access. A negative answer is definite.
+ * <p>
+ * The filter is built once when a snapshot is compiled and stored in it, so mapping the
+ * snapshot reads the words in place instead of hashing the whole table again.
+ */
+final class RevocationFilter {
+    private static final double LN2_SQUARED = Math.log(2) * Math.log(2);
+    // the top 24 bits of the hash pick the word, the low 36 bits the probes in it
+    private static final int MAX_WORDS = 1 << 24;
+    private static final int MAX_HASHES = 6;
+
+    private final LongBuffer words;
+    private final int mask;
+    private final int hashes;
+
+    private RevocationFilter(LongBuffer words, int hashes) {
+        this.words = words;
+        this.mask = words.limit() - 1;
+        this.hashes = hashes;
+    }
+
+    private RevocationFilter(int expected, double falsePositiveRate) {
+        double bitsPerKey = -Math.log(falsePositiveRate) / LN2_SQUARED;
+        int k = (int) Math.round(bitsPerKey * Math.log(2));
+        // blocking costs some accuracy, so give every key a few more bits than the ideal
+        long bits = Math.max(64, (long) Math.ceil(expected * bitsPerKey * 1.2));
+        int length = Integer.highestOneBit((int) Math.min(MAX_WORDS, (bits + 63) >>> 6));
+        if ((long) length << 6 < bits && length < MAX_WORDS) {
+            length <<= 1;
+        }
+        words = LongBuffer.wrap(new long[length]);
+        mask = length - 1;
+        hashes = Math.max(1, Math.min(MAX_HASHES, k));
+    }
+
+    /**
+     * @param falsePositiveRate in (0, 1), values outside disable the filter
+     * @return an empty filter sized for the expected number of serials, or null if disabled
+     */
+    static RevocationFilter create(int expected, double falsePositiveRate) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            return null;
+        }
+        return new RevocationFilter(expected, falsePositiveRate);
+    }
+
+    /**
+     * @param falsePositiveRate in (0, 1), values outside disable the filter
+     * @return a filter over every entry of the table, or null if disabled
+     */
+    static RevocationFilter build(ByteBuffer table, int size, int entryLength, int serialLength,
+                                  double falsePositiveRate) {
+        var filter = create(size, falsePositiveRate);
+        if (filter == null) {
+            return null;
+        }
+        var entries = table.duplicate();
+        var serial = new byte[serialLength];
+        for (int i = 0; i < size; i++) {
+            entries.position(i * entryLength);
+            entries.get(serial);
+            int start = 0;
+            while (start < serialLength && serial[start] == 0) {
+                start++;
+            }
+            filter.put(serial, start, serialLength - start);
+        }
+        return filter;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private long bits(long hash) {
+        long bits = 0;
+        for (int i = 0; i < hashes; i++) {
+            bits |= 1L << (hash >>> (i * 6));
+        }
+        return bits;
+    }
+
+    private void put(long hash) {
+        int index = (int) (hash >>> 40) & mask;
+        words.put(index, words.get(index) | bits(hash));
+    }
+
+    /**
+     * @param serial serial magnitude without leading zero bytes
+     */
+    void put(byte[] serial, int offset, int length) {
+        put(hash(serial, offset, length));
+    }
+
+    private static long hash(byte[] serial, int offset, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (serial[offset + i] & 0xff)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Writes the number of probes, the number of words and the words.
+     */
+    void write(DataOutputStream data) throws IOException {
+        data.writeInt(hashes);
+        data.writeInt(words.limit());
+        for (int i = 0; i < words.limit(); i++) {
+            data.writeLong(words.get(i));
+        }
+    }
+
+    /**
+     * Reads a filter written by {@link #write} from the buffer, whose words stay in it.
+     *
+     * @return the filter, or null if an empty one was written
+     */
+    static RevocationFilter read(ByteBuffer buffer) throws IOException {
+        int hashes = buffer.getInt();
+        int length = buffer.getInt();
+        if (length == 0) {
+            return null;
+        }
+        if (hashes < 1 || hashes > MAX_HASHES || length < 0 || length > MAX_WORDS
+                || Integer.bitCount(length) != 1 || buffer.remaining() / Long.BYTES < length) {
+            throw new IOException("corrupted revocation filter");
+        }
+        var slice = buffer.slice();
+        slice.limit(length * Long.BYTES);
+        buffer.position(buffer.position() + length * Long.BYTES);
+        return new RevocationFilter(slice.asLongBuffer(), hashes);
+    }
+
+    /**
+     * Writes a marker for no filter, read back as null by {@link #read}.
+     */
+    static void writeEmpty(DataOutputStream data) throws IOException {
+        data.writeInt(0);
+        data.writeInt(0);
+    }
+
+    /**
+     * @param serial serial magnitude without leading zero bytes
+     */
+    boolean mightContain(byte[] serial, int offset, int length) {
+        long hash = hash(serial, offset, length);
+        long bits = bits(hash);
+        return (words.get((int) (hash >>> 40) & mask) & bits) == bits;
+    }
+}
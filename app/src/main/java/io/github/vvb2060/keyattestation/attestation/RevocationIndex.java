@@ -0,0 +1,361 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * Sorted table of revoked serial numbers.
+ * <p>
+ * Each entry is the serial magnitude left-padded to {@link #SERIAL_LENGTH} bytes followed by
+ * one byte indexing the shared status dictionary, so a lookup is a binary search over the
+ * packed table and returns an interned {@link RevocationList} without allocating.
+ * <p>
+ * The same layout is used as the on-disk snapshot: a header, the dictionary, the Bloom filter
+ * built when the snapshot was compiled and the table, which can be memory-mapped and queried
+ * in place.
+ */
+final class RevocationIndex {
+    static final int SERIAL_LENGTH = 20;
+    private static final int ENTRY_LENGTH = SERIAL_LENGTH + 1;
+    private static final int MAGIC = 0x4b41524c;
+    private static final int VERSION = 4;
+    static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    private final ByteBuffer table;
+    private final RevocationList[] dictionary;
+    private final int size;
+    private final boolean downloaded;
+    private final String etag;
+    private final String lastModified;
+    private final double falsePositiveRate;
+    private final RevocationFilter filter;
+
+    private RevocationIndex(ByteBuffer table, RevocationList[] dictionary, int size,
+                            boolean downloaded, String etag, String lastModified,
+                            double falsePositiveRate, RevocationFilter filter) {
+        this.table = table;
+        this.dictionary = dictionary;
+        this.size = size;
+        this.downloaded = downloaded;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filter = filter;
+    }
+
+    /**
+     * @return the same table and dictionary behind a filter with the given false positive
+     * rate, or no filter if the rate is not in (0, 1)
+     */
+    RevocationIndex withFilter(double falsePositiveRate) {
+        if (Double.compare(falsePositiveRate, this.falsePositiveRate) == 0) {
+            return this;
+        }
+        var filter = RevocationFilter.build(table, size, ENTRY_LENGTH, SERIAL_LENGTH,
+                falsePositiveRate);
+        return new RevocationIndex(table, dictionary, size, downloaded, etag, lastModified,
+                falsePositiveRate, filter);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the list was downloaded from the server, false for the bundled one
+     */
+    boolean downloaded() {
+        return downloaded;
+    }
+
+    /**
+     * @return the ETag of the downloaded list, or an empty string
+     */
+    String etag() {
+        return etag;
+    }
+
+    /**
+     * @return the Last-Modified date of the downloaded list, or an empty string
+     */
+    String lastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @param serial two's complement big-endian serial number, as in the DER INTEGER content
+     */
+    RevocationList get(byte[] serial, int offset, int length) {
+        if (length == 0 || serial[offset] < 0) {
+            return null;
+        }
+        while (length > 0 && serial[offset] == 0) {
+            offset++;
+            length--;
+        }
+        if (length > SERIAL_LENGTH) {
+            return null;
+        }
+        if (filter != null && !filter.mightContain(serial, offset, length)) {
+            return null;
+        }
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int base = mid * ENTRY_LENGTH;
+            int cmp = compare(table, base, serial, offset, length);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return dictionary[table.get(base + SERIAL_LENGTH) & 0xff];
+            }
+        }
+        return null;
+    }
+
+    private static int compare(ByteBuffer table, int base, byte[] serial, int offset, int length) {
+        int pad = SERIAL_LENGTH - length;
+        for (int i = 0; i < pad; i++) {
+            if (table.get(base + i) != 0) {
+                return 1;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            int cmp = (table.get(base + pad + i) & 0xff) - (serial[offset + i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private static int compareSerials(ByteBuffer a, int baseA, ByteBuffer b, int baseB) {
+        for (int i = 0; i < SERIAL_LENGTH; i++) {
+            int cmp = (a.get(baseA + i) & 0xff) - (b.get(baseB + i) & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Walks both sorted tables once.
+     *
+     * @return the number of added, removed and changed serials going from {@code from} to
+     * {@code to}
+     */
+    static int[] diff(RevocationIndex from, RevocationIndex to) {
+        int added = 0;
+        int removed = 0;
+        int changed = 0;
+        int i = 0;
+        int j = 0;
+        while (i < from.size && j < to.size) {
+            int baseA = i * ENTRY_LENGTH;
+            int baseB = j * ENTRY_LENGTH;
+            int cmp = compareSerials(from.table, baseA, to.table, baseB);
+            if (cmp < 0) {
+                removed++;
+                i++;
+            } else if (cmp > 0) {
+                added++;
+                j++;
+            } else {
+                var a = from.dictionary[from.table.get(baseA + SERIAL_LENGTH) & 0xff];
+                var b = to.dictionary[to.table.get(baseB + SERIAL_LENGTH) & 0xff];
+                if (!a.equals(b)) {
+                    changed++;
+                }
+                i++;
+                j++;
+            }
+        }
+        removed += from.size - i;
+        added += to.size - j;
+        return new int[]{added, removed, changed};
+    }
+
+    private static int compareEntries(byte[] a, byte[] b) {
+        for (int i = 0; i < SERIAL_LENGTH; i++) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Compiles the {@code entries} object of the status list into the snapshot format.
+     *
+     * @param downloaded        whether the list was downloaded from the server
+     * @param etag              validator of the downloaded list, or null
+     * @param lastModified      Last-Modified date of the downloaded list, or null
+     * @param falsePositiveRate rate of the stored filter, none if not in (0, 1)
+     */
+    static byte[] compile(JSONObject entries, boolean downloaded, String etag,
+                          String lastModified, double falsePositiveRate) throws IOException {
+        var codes = new LinkedHashMap<RevocationList, Integer>();
+        var list = new ArrayList<byte[]>(entries.length());
+        for (var it = entries.keys(); it.hasNext(); ) {
+            var key = it.next();
+            var revocationStatus = entries.optJSONObject(key);
+            if (revocationStatus == null) {
+                continue;
+            }
+            RevocationList value;
+            try {
+                value = new RevocationList(revocationStatus.getString("status"),
+                        revocationStatus.getString("reason"));
+            } catch (JSONException e) {
+                value = new RevocationList("", "");
+            }
+            var code = codes.get(value);
+            if (code == null) {
+                code = codes.size();
+                if (code > 0xff) {
+                    throw new IOException("too many distinct revocation reasons");
+                }
+                codes.put(value, code);
+            }
+
+            byte[] magnitude;
+            try {
+                magnitude = new BigInteger(key, 16).toByteArray();
+            } catch (NumberFormatException e) {
+                throw new IOException("invalid serial number: " + key, e);
+            }
+            int start = magnitude[0] == 0 ? 1 : 0;
+            int length = magnitude.length - start;
+            if (magnitude[0] < 0 || length > SERIAL_LENGTH) {
+                throw new IOException("invalid serial number: " + key);
+            }
+            var entry = new byte[ENTRY_LENGTH];
+            System.arraycopy(magnitude, start, entry, SERIAL_LENGTH - length, length);
+            entry[SERIAL_LENGTH] = (byte) (int) code;
+            list.add(entry);
+        }
+        list.sort(RevocationIndex::compareEntries);
+        var filter = RevocationFilter.create(list.size(), falsePositiveRate);
+        if (filter != null) {
+            for (var entry : list) {
+                int start = 0;
+                while (start < SERIAL_LENGTH && entry[start] == 0) {
+                    start++;
+                }
+                filter.put(entry, start, SERIAL_LENGTH - start);
+            }
+        }
+
+        var output = new ByteArrayOutputStream(64 + list.size() * ENTRY_LENGTH);
+        var data = new DataOutputStream(output);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(codes.size());
+        data.writeInt(list.size());
+        data.writeBoolean(downloaded);
+        writeString(data, etag == null ? "" : etag);
+        writeString(data, lastModified == null ? "" : lastModified);
+        data.writeDouble(filter == null ? 0 : falsePositiveRate);
+        for (var value : codes.keySet()) {
+            writeString(data, value.status());
+            writeString(data, value.reason());
+        }
+        if (filter != null) {
+            filter.write(data);
+        } else {
+            RevocationFilter.writeEmpty(data);
+        }
+        for (var entry : list) {
+            data.write(entry);
+        }
+        data.flush();
+        return output.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream data, String s) throws IOException {
+        var bytes = s.getBytes(StandardCharsets.UTF_8);
+        data.writeShort(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        var bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static RevocationIndex open(ByteBuffer buffer, double falsePositiveRate) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("unsupported revocation snapshot");
+            }
+            int count = buffer.getInt();
+            int size = buffer.getInt();
+            boolean downloaded = buffer.get() != 0;
+            var etag = readString(buffer);
+            var lastModified = readString(buffer);
+            var storedRate = buffer.getDouble();
+            var dictionary = new RevocationList[count];
+            for (int i = 0; i < count; i++) {
+                dictionary[i] = new RevocationList(readString(buffer), readString(buffer));
+            }
+            var filter = RevocationFilter.read(buffer);
+            if (size < 0 || buffer.remaining() != size * ENTRY_LENGTH) {
+                throw new IOException("truncated revocation snapshot");
+            }
+            var table = buffer.slice();
+            for (int i = 0; i < size; i++) {
+                if ((table.get(i * ENTRY_LENGTH + SERIAL_LENGTH) & 0xff) >= count) {
+                    throw new IOException("corrupted revocation snapshot");
+                }
+            }
+            var index = new RevocationIndex(table, dictionary, size, downloaded, etag,
+                    lastModified, filter == null ? 0 : storedRate, filter);
+            return index.withFilter(falsePositiveRate);
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException("truncated revocation snapshot", e);
+        }
+    }
+
+    static RevocationIndex open(byte[] snapshot, double falsePositiveRate) throws IOException {
+        return open(ByteBuffer.wrap(snapshot), falsePositiveRate);
+    }
+
+    static RevocationIndex map(File file, double falsePositiveRate) throws IOException {
+        try (var channel = new FileInputStream(file).getChannel()) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return open(buffer, falsePositiveRate);
+        }
+    }
+
+    static void write(File file, byte[] snapshot) throws IOException {
+        var tmp = new File(file.getPath() + ".tmp");
+        try (var output = new FileOutputStream(tmp)) {
+            output.write(snapshot);
+            output.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("failed to write " + file);
+        }
+    }
+}
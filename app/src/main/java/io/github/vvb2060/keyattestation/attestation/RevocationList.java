@@ -1,22 +1,50 @@
 package io.github.vvb2060.keyattestation.attestation;
 
 import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 import io.github.vvb2060.keyattestation.AppApplication;
 import io.github.vvb2060.keyattestation.R;
 
 public record RevocationList(String status, String reason) {
-    private static final JSONObject data = getStatus();
+    private static final String STATUS_URL = "https://android.googleapis.com/attestation/status";
+    private static final String SNAPSHOT_NAME = "revocation.bin";
+    static final long MIN_REFRESH_INTERVAL = TimeUnit.HOURS.toMillis(12);
+    private static final Object refreshLock = new Object();
+    private static volatile double falsePositiveRate = RevocationIndex.DEFAULT_FALSE_POSITIVE_RATE;
+
+    /**
+     * Outcome of {@link #refresh(URL)}.
+     *
+     * @param modified      false if the server answered 304 Not Modified
+     * @param added         serials revoked since the previous list
+     * @param removed       serials no longer listed
+     * @param changed       serials whose status or reason changed
+     * @param rebuildMillis time spent parsing, compiling and publishing the new list
+     */
+    public record Update(boolean modified, int added, int removed, int changed,
+                         long rebuildMillis) {
+        @Override
+        public String toString() {
+            if (!modified) return "not modified";
+            return "added " + added + ", removed " + removed + ", changed " + changed +
+                    " in " + rebuildMillis + "ms";
+        }
+    }
 
     private static String toString(InputStream input) throws IOException {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
@@ -31,50 +59,177 @@ public record RevocationList(String status, String reason) {
         }
     }
 
-    private static JSONObject parseStatus(InputStream inputStream) throws IOException {
+    private static byte[] parseStatus(InputStream inputStream, boolean downloaded, String etag,
+                                      String lastModified) throws IOException {
         try {
             var statusListJson = new JSONObject(toString(inputStream));
-            return statusListJson.getJSONObject("entries");
+            return RevocationIndex.compile(statusListJson.getJSONObject("entries"),
+                    downloaded, etag, lastModified, falsePositiveRate);
         } catch (JSONException e) {
             throw new IOException(e);
         }
     }
 
-    private static JSONObject getStatus() {
-        var statusUrl = "https://android.googleapis.com/attestation/status";
+    /**
+     * @return an index of the status list read from the input, without writing a snapshot
+     */
+    static RevocationIndex parse(InputStream inputStream) throws IOException {
+        return RevocationIndex.open(parseStatus(inputStream, false, null, null),
+                falsePositiveRate);
+    }
+
+    private static File getSnapshotFile() {
+        // code cache is cleared on app update, so the snapshot never outlives its source
+        return new File(AppApplication.app.getCodeCacheDir(), SNAPSHOT_NAME);
+    }
+
+    private static RevocationIndex publish(byte[] snapshot, File file) throws IOException {
+        try {
+            RevocationIndex.write(file, snapshot);
+            return RevocationIndex.map(file, falsePositiveRate);
+        } catch (IOException e) {
+            Log.w(AppApplication.TAG, "Failed to write revocation snapshot", e);
+        }
+        return RevocationIndex.open(snapshot, falsePositiveRate);
+    }
+
+    static RevocationIndex load() {
+        var file = getSnapshotFile();
+        try {
+            return RevocationIndex.map(file, falsePositiveRate);
+        } catch (IOException e) {
+            if (file.exists()) {
+                Log.w(AppApplication.TAG, "Discarding revocation snapshot", e);
+            }
+        }
+        var res = AppApplication.app.getResources();
+        try (var input = res.openRawResource(R.raw.status)) {
+            return publish(parseStatus(input, false, null, null), file);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to parse certificate revocation status", e);
+        }
+    }
+
+    /**
+     * @return the vendor status list url if the device declares one, otherwise Google's
+     */
+    public static URL getStatusUrl() throws IOException {
         var resName = "android:string/vendor_required_attestation_revocation_list_url";
         var res = AppApplication.app.getResources();
         // noinspection DiscouragedApi
         var id = res.getIdentifier(resName, null, null);
         if (id != 0) {
             var url = res.getString(id);
-            if (!statusUrl.equals(url) && url.toLowerCase(Locale.ROOT).startsWith("https")) {
-                // no network permission, waiting for user report
-                throw new RuntimeException("unknown status url: " + url);
+            if (url.toLowerCase(Locale.ROOT).startsWith("https")) {
+                return new URL(url);
             }
         }
-        try (var input = res.openRawResource(R.raw.status)) {
-            return parseStatus(input);
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to parse certificate revocation status", e);
-        }
+        return new URL(STATUS_URL);
     }
 
-    public static RevocationList get(BigInteger serialNumber) {
-        String serialNumberString = serialNumber.toString(16).toLowerCase();
-        JSONObject revocationStatus;
-        try {
-            revocationStatus = data.getJSONObject(serialNumberString);
-        } catch (JSONException e) {
+    public static Update refresh() throws IOException {
+        return refresh(getStatusUrl());
+    }
+
+    /**
+     * Like {@link #refresh()}, but does nothing if the list was checked with the server less
+     * than {@link #MIN_REFRESH_INTERVAL} ago.
+     *
+     * @return the outcome, or null if the list is fresh enough
+     */
+    public static Update refreshIfStale() throws IOException {
+        var file = getSnapshotFile();
+        if (!isStale(TrustData.revocation.get(), file, System.currentTimeMillis())) {
             return null;
         }
-        try {
-            var status = revocationStatus.getString("status");
-            var reason = revocationStatus.getString("reason");
-            return new RevocationList(status, reason);
-        } catch (JSONException e) {
-            return new RevocationList("", "");
+        return refresh(getStatusUrl(), file);
+    }
+
+    /**
+     * The modification time of the snapshot records when the list was last checked with the
+     * server, whether or not the server sent validators. A snapshot compiled from the bundled
+     * list was never checked.
+     */
+    static boolean isStale(RevocationIndex index, File file, long now) {
+        if (!index.downloaded()) {
+            return true;
         }
+        long checked = file.lastModified();
+        return checked == 0 || now - checked >= MIN_REFRESH_INTERVAL || now < checked;
+    }
+
+    /**
+     * Conditionally downloads the status list and, if it changed, atomically replaces the
+     * list used by {@link #get}. Lookups in progress keep using the previous list.
+     */
+    public static Update refresh(URL url) throws IOException {
+        return refresh(url, getSnapshotFile());
+    }
+
+    /**
+     * @param file where the new snapshot is written, the current one is kept if the list
+     *             cannot be downloaded or parsed
+     */
+    static Update refresh(URL url, File file) throws IOException {
+        synchronized (refreshLock) {
+            var current = TrustData.revocation.get();
+            var con = (HttpURLConnection) url.openConnection();
+            con.setConnectTimeout(2_000);
+            con.setReadTimeout(20_000);
+            con.setUseCaches(false);
+            if (!current.etag().isEmpty()) {
+                con.setRequestProperty("If-None-Match", current.etag());
+            }
+            if (!current.lastModified().isEmpty()) {
+                con.setRequestProperty("If-Modified-Since", current.lastModified());
+            }
+            try {
+                var code = con.getResponseCode();
+                if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    // noinspection ResultOfMethodCallIgnored
+                    file.setLastModified(System.currentTimeMillis());
+                    return new Update(false, 0, 0, 0, 0);
+                } else if (code != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("Failed to fetch " + url + ": HTTP " + code);
+                }
+                try (var input = con.getInputStream()) {
+                    var start = SystemClock.elapsedRealtime();
+                    var index = publish(parseStatus(input, true, con.getHeaderField("ETag"),
+                            con.getHeaderField("Last-Modified")), file);
+                    TrustData.revocation.set(index);
+                    var diff = RevocationIndex.diff(current, index);
+                    var update = new Update(true, diff[0], diff[1], diff[2],
+                            SystemClock.elapsedRealtime() - start);
+                    Log.i(AppApplication.TAG, "Revocation list updated: " + update);
+                    return update;
+                }
+            } finally {
+                con.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Sets the false positive rate of the filter that answers most lookups of serials which
+     * are not revoked before the table is searched. A rate outside (0, 1) disables it.
+     */
+    public static void setFalsePositiveRate(double rate) {
+        synchronized (refreshLock) {
+            falsePositiveRate = rate;
+            var index = TrustData.revocation.get();
+            TrustData.revocation.set(index.withFilter(rate));
+        }
+    }
+
+    public static RevocationList get(byte[] serialNumber) {
+        return get(serialNumber, 0, serialNumber.length);
+    }
+
+    /**
+     * @param data array holding the DER INTEGER content of a serial number at {@code offset}
+     */
+    static RevocationList get(byte[] data, int offset, int length) {
+        return TrustData.revocation.get().get(data, offset, length);
     }
 
     @Override
@@ -18,17 +18,9 @@ package io.github.vvb2060.keyattestation.attestation;
 
 import com.google.common.io.BaseEncoding;
 
-import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.ASN1Sequence;
-
 import java.security.cert.CertificateParsingException;
 
 public class RootOfTrust {
-    private static final int VERIFIED_BOOT_KEY_INDEX = 0;
-    private static final int DEVICE_LOCKED_INDEX = 1;
-    private static final int VERIFIED_BOOT_STATE_INDEX = 2;
-    private static final int VERIFIED_BOOT_HASH_INDEX = 3;
-
     public static final int KM_VERIFIED_BOOT_VERIFIED = 0;
     public static final int KM_VERIFIED_BOOT_SELF_SIGNED = 1;
     public static final int KM_VERIFIED_BOOT_UNVERIFIED = 2;
@@ -39,20 +31,14 @@ public class RootOfTrust {
     private final int verifiedBootState;
     private final byte[] verifiedBootHash;
 
-    public RootOfTrust(ASN1Encodable asn1Encodable) throws CertificateParsingException {
-        if (!(asn1Encodable instanceof ASN1Sequence sequence)) {
-            throw new CertificateParsingException("Expected sequence for root of trust, found "
-                    + asn1Encodable.getClass().getName());
-        }
+    RootOfTrust(DerReader reader) throws CertificateParsingException {
+        var sequence = reader.enter(DerReader.SEQUENCE, "sequence for root of trust");
 
-        verifiedBootKey =
-                Asn1Utils.getByteArrayFromAsn1(sequence.getObjectAt(VERIFIED_BOOT_KEY_INDEX));
-        deviceLocked = Asn1Utils.getBooleanFromAsn1(sequence.getObjectAt(DEVICE_LOCKED_INDEX));
-        verifiedBootState =
-                Asn1Utils.getIntegerFromAsn1(sequence.getObjectAt(VERIFIED_BOOT_STATE_INDEX));
-        if (sequence.size() == 3) verifiedBootHash = null;
-        else verifiedBootHash =
-                Asn1Utils.getByteArrayFromAsn1(sequence.getObjectAt(VERIFIED_BOOT_HASH_INDEX));
+        verifiedBootKey = sequence.next().getOctets();
+        deviceLocked = sequence.next().getBoolean();
+        verifiedBootState = sequence.next().getInt();
+        if (!sequence.hasNext()) verifiedBootHash = null;
+        else verifiedBootHash = sequence.next().getOctets();
     }
 
     RootOfTrust(byte[] verifiedBootKey, boolean deviceLocked,
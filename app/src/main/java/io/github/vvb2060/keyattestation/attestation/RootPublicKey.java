@@ -1,9 +1,14 @@
 package io.github.vvb2060.keyattestation.attestation;
 
-import android.util.Base64;
 import android.util.Log;
 
+import com.google.common.io.BaseEncoding;
+
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.security.PublicKey;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
@@ -67,13 +72,100 @@ public class RootPublicKey {
             oiC6ldbF2uNVU3rYYSytWAJg3GFKd1l9VLDmxox58Hyw2Jmdd5VSObGiTFQ/SgKs\
             n2fbQPtpGlNxgEfd6Y8=""";
 
-    private static final byte[] googleKey = Base64.decode(GOOGLE_ROOT_PUBLIC_KEY, 0);
-    private static final byte[] aospEcKey = Base64.decode(AOSP_ROOT_EC_PUBLIC_KEY, 0);
-    private static final byte[] aospRsaKey = Base64.decode(AOSP_ROOT_RSA_PUBLIC_KEY, 0);
-    private static final byte[] knoxSakv1Key = Base64.decode(KNOX_SAKV1_ROOT_PUBLIC_KEY, 0);
-    private static final byte[] knoxSakv2Key = Base64.decode(KNOX_SAKV2_ROOT_PUBLIC_KEY, 0);
-    private static final byte[] knoxSakmv1Key = Base64.decode(KNOX_SAKMV1_ROOT_PUBLIC_KEY, 0);
-    private static final Set<PublicKey> oemKeys = getOemPublicKey();
+    private static final String TRUST_BUNDLE_NAME = "trust_bundle";
+
+    // both guarded by TrustData.anchors, which also serializes loadTrustAnchors
+    private static TrustBundle bundle;
+    private static boolean bundleLoaded;
+
+    static TrustAnchorIndex loadTrustAnchors() {
+        if (!bundleLoaded) {
+            bundle = loadSavedTrustBundle();
+            bundleLoaded = true;
+        }
+        return buildTrustAnchors(getOemPublicKey(), bundle);
+    }
+
+    /**
+     * Built-in keys come first, so a bundle cannot change their category.
+     */
+    static TrustAnchorIndex buildTrustAnchors(Set<PublicKey> oemKeys, TrustBundle bundle) {
+        var builder = new TrustAnchorIndex.Builder()
+                .add(BaseEncoding.base64().decode(GOOGLE_ROOT_PUBLIC_KEY), Status.GOOGLE)
+                .add(BaseEncoding.base64().decode(AOSP_ROOT_EC_PUBLIC_KEY), Status.AOSP)
+                .add(BaseEncoding.base64().decode(AOSP_ROOT_RSA_PUBLIC_KEY), Status.AOSP)
+                .add(BaseEncoding.base64().decode(KNOX_SAKV2_ROOT_PUBLIC_KEY), Status.KNOX)
+                .add(BaseEncoding.base64().decode(KNOX_SAKV1_ROOT_PUBLIC_KEY), Status.KNOX)
+                .add(BaseEncoding.base64().decode(KNOX_SAKMV1_ROOT_PUBLIC_KEY), Status.KNOX);
+        for (var key : oemKeys) {
+            builder.add(key.getEncoded(), Status.OEM);
+        }
+        if (bundle != null) {
+            bundle.addTo(builder);
+        }
+        return builder.build();
+    }
+
+    private static File getTrustBundleFile() {
+        return new File(AppApplication.app.getFilesDir(), TRUST_BUNDLE_NAME);
+    }
+
+    private static TrustBundle loadSavedTrustBundle() {
+        var file = getTrustBundleFile();
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return TrustBundle.load(file);
+        } catch (IOException e) {
+            Log.w(AppApplication.TAG, "Discarding trust bundle", e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves the bundle file read from the input, replacing the previous one, and uses it from
+     * now on and after restarts. Nothing changes if the file is not a valid bundle.
+     *
+     * @return the number of keys in the bundle
+     */
+    public static int importTrustBundle(InputStream input) throws IOException {
+        var file = getTrustBundleFile();
+        var tmp = new File(file.getPath() + ".tmp");
+        try (var output = new FileOutputStream(tmp)) {
+            var buffer = new byte[8192];
+            for (int length; (length = input.read(buffer)) != -1; ) {
+                output.write(buffer, 0, length);
+            }
+        }
+        TrustBundle bundle;
+        try {
+            bundle = TrustBundle.load(tmp);
+        } catch (IOException e) {
+            // noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            throw e;
+        }
+        if (!tmp.renameTo(file)) {
+            // noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            throw new IOException("Failed to write " + file);
+        }
+        setTrustBundle(bundle);
+        return bundle.size();
+    }
+
+    /**
+     * Replaces the external trust bundle, or removes it if null. Chains verified afterwards
+     * use the new roots, verifications in progress are not affected.
+     */
+    public static void setTrustBundle(TrustBundle bundle) {
+        synchronized (TrustData.anchors) {
+            RootPublicKey.bundle = bundle;
+            bundleLoaded = true;
+            TrustData.anchors.set(loadTrustAnchors());
+        }
+    }
 
     private static Set<PublicKey> getOemPublicKey() {
         var resName = "android:array/vendor_required_attestation_certificates";
@@ -81,7 +173,7 @@ public class RootPublicKey {
         // noinspection DiscouragedApi
         var id = res.getIdentifier(resName, null, null);
         if (id == 0) {
-            return null;
+            return Set.of();
         }
         var set = new HashSet<PublicKey>();
         try {
@@ -96,36 +188,19 @@ public class RootPublicKey {
             }
         } catch (CertificateException e) {
             Log.e(AppApplication.TAG, "getOemKeys: ", e);
-            return null;
+            return Set.of();
         }
+        var googleKey = BaseEncoding.base64().decode(GOOGLE_ROOT_PUBLIC_KEY);
         set.removeIf(key -> Arrays.equals(key.getEncoded(), googleKey));
         if (set.isEmpty()) {
-            return null;
+            return Set.of();
         }
         set.forEach(key -> Log.i(AppApplication.TAG, "getOemKeys: " + key));
         return set;
     }
 
     public static Status check(byte[] publicKey) {
-        if (Arrays.equals(publicKey, googleKey)) {
-            return Status.GOOGLE;
-        } else if (Arrays.equals(publicKey, aospEcKey)) {
-            return Status.AOSP;
-        } else if (Arrays.equals(publicKey, aospRsaKey)) {
-            return Status.AOSP;
-        } else if (Arrays.equals(publicKey, knoxSakv2Key)) {
-            return Status.KNOX;
-        } else if (Arrays.equals(publicKey, knoxSakv1Key)) {
-            return Status.KNOX;
-        } else if (Arrays.equals(publicKey, knoxSakmv1Key)) {
-            return Status.KNOX;
-        } else if (oemKeys != null) {
-            for (var key : oemKeys) {
-                if (Arrays.equals(publicKey, key.getEncoded())) {
-                    return Status.OEM;
-                }
-            }
-        }
-        return Status.UNKNOWN;
+        var status = TrustData.anchors.get().get(publicKey);
+        return status == null ? Status.UNKNOWN : status;
     }
 }
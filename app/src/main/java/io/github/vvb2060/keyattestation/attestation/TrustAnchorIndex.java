@@ -0,0 +1,100 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Open addressing table of root public keys, keyed by the first 64 bits of the SHA-256 of
+ * their SubjectPublicKeyInfo encoding.
+ * <p>
+ * A lookup hashes the candidate key once and probes the table; the stored encoding is
+ * compared only on a prefix match.
+ */
+final class TrustAnchorIndex {
+    private final long[] prefixes;
+    private final byte[][] keys;
+    private final RootPublicKey.Status[] statuses;
+    private final int mask;
+    private final int size;
+
+    private TrustAnchorIndex(Builder builder) {
+        int capacity = Integer.highestOneBit(Math.max(4, builder.keys.size() * 2 - 1)) << 1;
+        prefixes = new long[capacity];
+        keys = new byte[capacity][];
+        statuses = new RootPublicKey.Status[capacity];
+        mask = capacity - 1;
+        int size = 0;
+        next:
+        for (int i = 0; i < builder.keys.size(); i++) {
+            var key = builder.keys.get(i);
+            var prefix = prefix(key);
+            int slot = (int) prefix & mask;
+            while (keys[slot] != null) {
+                if (prefixes[slot] == prefix && Arrays.equals(keys[slot], key)) {
+                    continue next;
+                }
+                slot = (slot + 1) & mask;
+            }
+            prefixes[slot] = prefix;
+            keys[slot] = key;
+            statuses[slot] = builder.statuses.get(i);
+            size++;
+        }
+        this.size = size;
+    }
+
+    private static long prefix(byte[] encoded) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(encoded);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        long prefix = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            prefix = prefix << 8 | (digest[i] & 0xff);
+        }
+        return prefix;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param publicKey encoded SubjectPublicKeyInfo
+     * @return the category of the root, or null if it is not trusted
+     */
+    RootPublicKey.Status get(byte[] publicKey) {
+        var prefix = prefix(publicKey);
+        int slot = (int) prefix & mask;
+        while (keys[slot] != null) {
+            if (prefixes[slot] == prefix && Arrays.equals(keys[slot], publicKey)) {
+                return statuses[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    static final class Builder {
+        private final List<byte[]> keys = new ArrayList<>();
+        private final List<RootPublicKey.Status> statuses = new ArrayList<>();
+
+        /**
+         * Adds a root key. If the same key is added more than once, the first category wins.
+         */
+        Builder add(byte[] publicKey, RootPublicKey.Status status) {
+            keys.add(publicKey.clone());
+            statuses.add(status);
+            return this;
+        }
+
+        TrustAnchorIndex build() {
+            return new TrustAnchorIndex(this);
+        }
+    }
+}
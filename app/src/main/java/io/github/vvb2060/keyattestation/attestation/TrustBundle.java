@@ -0,0 +1,187 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import com.google.common.io.BaseEncoding;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Root keys loaded from outside the app, each tagged with a {@link RootPublicKey.Status}.
+ * Only the {@link RootPublicKey.Status#KNOX} and {@link RootPublicKey.Status#OEM} categories
+ * can be claimed, so a bundle never makes a chain look like a Google or AOSP one.
+ * <p>
+ * A bundle is a single file or a directory of files. A file holds DER or PKCS#7 encoded
+ * certificates, or PEM encoded certificates and public keys. Keys are tagged with the category
+ * named by the file name prefix up to the first '_' or '.', for example {@code knox_v3.pem},
+ * or {@link RootPublicKey.Status#OEM} if the prefix is not a category. In PEM files a line
+ * {@code Category: NAME} changes the category of the blocks that follow it.
+ */
+public final class TrustBundle {
+    private static final String BEGIN = "-----BEGIN ";
+    private static final String END = "-----END ";
+    private static final String CATEGORY = "Category:";
+    private static final Set<RootPublicKey.Status> CATEGORIES =
+            EnumSet.of(RootPublicKey.Status.KNOX, RootPublicKey.Status.OEM);
+
+    private final List<byte[]> keys;
+    private final List<RootPublicKey.Status> statuses;
+
+    private TrustBundle(List<byte[]> keys, List<RootPublicKey.Status> statuses) {
+        this.keys = keys;
+        this.statuses = statuses;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    void addTo(TrustAnchorIndex.Builder builder) {
+        for (int i = 0; i < keys.size(); i++) {
+            builder.add(keys.get(i), statuses.get(i));
+        }
+    }
+
+    /**
+     * Loads a bundle file, or every file of a bundle directory in parallel.
+     */
+    public static TrustBundle load(File file) throws IOException {
+        if (!file.isDirectory()) {
+            var bundle = new TrustBundle(new ArrayList<>(), new ArrayList<>());
+            bundle.parse(file);
+            return bundle;
+        }
+        var files = file.listFiles(File::isFile);
+        if (files == null) {
+            throw new IOException("Failed to list " + file);
+        }
+        Arrays.sort(files);
+        var futures = new ArrayList<CompletableFuture<TrustBundle>>(files.length);
+        for (var f : files) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return load(f);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }));
+        }
+        var bundle = new TrustBundle(new ArrayList<>(), new ArrayList<>());
+        for (var future : futures) {
+            TrustBundle part;
+            try {
+                part = future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException io) throw io;
+                throw e;
+            }
+            bundle.keys.addAll(part.keys);
+            bundle.statuses.addAll(part.statuses);
+        }
+        return bundle;
+    }
+
+    private static RootPublicKey.Status parseCategory(String name) throws IOException {
+        RootPublicKey.Status status;
+        try {
+            status = RootPublicKey.Status.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown category: " + name);
+        }
+        if (!CATEGORIES.contains(status)) {
+            throw new IOException("Category not allowed in a bundle: " + status);
+        }
+        return status;
+    }
+
+    private static RootPublicKey.Status getDefaultCategory(File file) {
+        var name = file.getName();
+        for (int i = 0; i < name.length(); i++) {
+            var c = name.charAt(i);
+            if (c == '_' || c == '.') {
+                name = name.substring(0, i);
+                break;
+            }
+        }
+        try {
+            return parseCategory(name);
+        } catch (IOException e) {
+            return RootPublicKey.Status.OEM;
+        }
+    }
+
+    private static byte[] readAll(File file) throws IOException {
+        try (var input = new FileInputStream(file)) {
+            var data = new byte[(int) file.length()];
+            int offset = 0;
+            for (int length; offset < data.length
+                    && (length = input.read(data, offset, data.length - offset)) != -1; ) {
+                offset += length;
+            }
+            return offset == data.length ? data : Arrays.copyOf(data, offset);
+        }
+    }
+
+    private void add(InputStream input, RootPublicKey.Status status)
+            throws CertificateException {
+        var factory = CertificateFactory.getInstance("X.509");
+        for (Certificate cert : factory.generateCertificates(input)) {
+            keys.add(cert.getPublicKey().getEncoded());
+            statuses.add(status);
+        }
+    }
+
+    private void parse(File file) throws IOException {
+        var data = readAll(file);
+        var status = getDefaultCategory(file);
+        var text = new String(data, StandardCharsets.US_ASCII);
+        try {
+            if (!text.contains(BEGIN)) {
+                add(new ByteArrayInputStream(data), status);
+                return;
+            }
+            String type = null;
+            var body = new StringBuilder();
+            for (var line : text.split("\r?\n")) {
+                line = line.trim();
+                if (type == null) {
+                    if (line.startsWith(CATEGORY)) {
+                        status = parseCategory(line.substring(CATEGORY.length()));
+                    } else if (line.startsWith(BEGIN)) {
+                        type = line.substring(BEGIN.length());
+                        body.setLength(0);
+                    }
+                } else if (line.startsWith(END)) {
+                    var der = BaseEncoding.base64().decode(body);
+                    if (type.startsWith("CERTIFICATE")) {
+                        add(new ByteArrayInputStream(der), status);
+                    } else if (type.startsWith("PUBLIC KEY")) {
+                        keys.add(der);
+                        statuses.add(status);
+                    } else {
+                        throw new IOException("Unsupported PEM block: " + type);
+                    }
+                    type = null;
+                } else {
+                    body.append(line);
+                }
+            }
+        } catch (CertificateException | IllegalArgumentException e) {
+            throw new IOException("Failed to parse " + file, e);
+        }
+    }
+}
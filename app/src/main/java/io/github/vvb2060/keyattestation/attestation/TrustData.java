@@ -0,0 +1,93 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import io.github.vvb2060.keyattestation.AppApplication;
+
+/**
+ * Provider of the trust data used to verify certificate chains: the revocation list and the
+ * index of trusted root keys.
+ * <p>
+ * Each part is loaded on first use, or ahead of time by {@link #warmUp()} so that loading
+ * overlaps with key generation. A failed load is not remembered, the next access retries it.
+ */
+public final class TrustData {
+    static final Lazy<RevocationIndex> revocation = new Lazy<>(RevocationList::load);
+    static final Lazy<TrustAnchorIndex> anchors = new Lazy<>(RootPublicKey::loadTrustAnchors);
+
+    interface Loader<T> {
+        T load();
+    }
+
+    static final class Lazy<T> {
+        private final Loader<T> loader;
+        private volatile T value;
+
+        Lazy(Loader<T> loader) {
+            this.loader = loader;
+        }
+
+        T get() {
+            var v = value;
+            if (v != null) {
+                return v;
+            }
+            synchronized (this) {
+                if (value == null) {
+                    value = loader.load();
+                }
+                return value;
+            }
+        }
+
+        void set(T value) {
+            this.value = value;
+        }
+
+        boolean isLoaded() {
+            return value != null;
+        }
+    }
+
+    private TrustData() {
+    }
+
+    private static CompletableFuture<Void> load(Lazy<?> lazy) {
+        return CompletableFuture.runAsync(lazy::get);
+    }
+
+    /**
+     * Starts loading all trust data in the background.
+     *
+     * @return a future completed when everything is loaded, or exceptionally if a part failed
+     */
+    public static CompletableFuture<Void> warmUp() {
+        var future = CompletableFuture.allOf(load(revocation), load(anchors));
+        future.exceptionally(e -> {
+            Log.w(AppApplication.TAG, "Failed to load trust data", e);
+            return null;
+        });
+        return future;
+    }
+
+    /**
+     * Uses trust data read from files instead of the app's resources and settings, so that
+     * chains can be verified without an app, such as from the command line or in tests.
+     *
+     * @param statusList revocation status list in the format served by Google
+     * @param bundle     extra root keys, or null
+     */
+    public static void load(InputStream statusList, TrustBundle bundle) throws IOException {
+        revocation.set(RevocationList.parse(statusList));
+        anchors.set(RootPublicKey.buildTrustAnchors(Set.of(), bundle));
+    }
+
+    public static boolean isReady() {
+        return revocation.isLoaded() && anchors.isLoaded();
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+
+/**
+ * Remembers successful signature verifications, keyed by the SHA-256 of the issuer's
+ * SubjectPublicKeyInfo followed by the child certificate's encoding.
+ * <p>
+ * Intermediate and root certificates are shared by many devices, so verifying them again is
+ * a hash lookup. Only CA certificates are cached, leaf certificates are unique to a key and
+ * would only evict them. Failures are not cached.
+ */
+public final class VerificationCache {
+    private static final int MAXIMUM_SIZE = 1024;
+
+    private static final Cache<HashCode, Boolean> cache = CacheBuilder.newBuilder()
+            .maximumSize(MAXIMUM_SIZE)
+            .recordStats()
+            .build();
+
+    private VerificationCache() {
+    }
+
+    static void verify(X509Certificate cert, PublicKey parentKey)
+            throws GeneralSecurityException {
+        if (cert.getBasicConstraints() < 0) {
+            cert.verify(parentKey);
+            return;
+        }
+        var key = Hashing.sha256().newHasher()
+                .putBytes(parentKey.getEncoded())
+                .putBytes(cert.getEncoded())
+                .hash();
+        if (cache.getIfPresent(key) != null) {
+            return;
+        }
+        cert.verify(parentKey);
+        cache.put(key, Boolean.TRUE);
+    }
+
+    /**
+     * @return hit, miss and eviction counters since the app started
+     */
+    public static CacheStats stats() {
+        return cache.stats();
+    }
+}
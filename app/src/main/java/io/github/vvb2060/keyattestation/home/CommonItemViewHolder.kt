@@ -109,6 +109,59 @@ open class CommonItemViewHolder<T>(itemView: View, binding: HomeCommonItemBindin
             }
         }
 
+        val COMPARISON_CREATOR = Creator<ComparisonData> { inflater, parent ->
+            val binding = HomeCommonItemBinding.inflate(inflater, parent, false)
+            object : CommonItemViewHolder<ComparisonData>(binding.root, binding) {
+
+                init {
+                    this.binding.apply {
+                        text1.isVisible = false
+                        icon.isVisible = false
+                        root.setOnClickListener {
+                            listener.onCommonDataClick(data)
+                        }
+                    }
+                }
+
+                override fun onBind() {
+                    val context = itemView.context
+                    val empty = context.getString(R.string.empty)
+                    binding.title.setText(data.title)
+                    binding.summary.text = context.getString(R.string.comparison_summary_format,
+                            context.getString(R.string.security_level_trusted_environment),
+                            data.tee ?: empty,
+                            context.getString(R.string.security_level_strongbox),
+                            data.strongBox ?: empty)
+                }
+            }
+        }
+
+        val SIDE_CREATOR = Creator<SideData> { inflater, parent ->
+            val binding = HomeCommonItemBinding.inflate(inflater, parent, false)
+            object : CommonItemViewHolder<SideData>(binding.root, binding) {
+
+                init {
+                    this.binding.apply {
+                        text1.isVisible = false
+                        icon.background = null
+                        root.setOnClickListener {
+                            listener.onCommonDataClick(data)
+                        }
+                    }
+                }
+
+                override fun onBind() {
+                    val context = itemView.context
+                    binding.apply {
+                        title.setText(data.title)
+                        summary.setText(data.status.title)
+                        icon.setImageDrawable(context.getDrawable(data.status.icon))
+                        icon.imageTintList = context.theme.resolveColorStateList(data.status.color)
+                    }
+                }
+            }
+        }
+
         val SECURITY_LEVEL_CREATOR = Creator<SecurityLevelData> { inflater, parent ->
             val binding = HomeCommonItemBinding.inflate(inflater, parent, false)
             object : CommonItemViewHolder<SecurityLevelData>(binding.root, binding) {
@@ -63,3 +63,20 @@ class SecurityLevelData(
                 context.getString(securityLevelDescription)).toHtml(flags)
     }
 }
+
+class SideData(
+    override val title: Int,
+    val status: HeaderData
+) : Data() {
+    override val description = status.description
+
+    override fun getMessage(context: Context): CharSequence =
+        if (description != 0) super.getMessage(context) else context.getString(status.title)
+}
+
+class ComparisonData(
+    override val title: Int,
+    override val description: Int,
+    val tee: String?,
+    val strongBox: String?
+) : Data()
@@ -8,8 +8,10 @@ import io.github.vvb2060.keyattestation.attestation.*
 import io.github.vvb2060.keyattestation.lang.AttestationException
 import io.github.vvb2060.keyattestation.lang.AttestationException.Companion.CODE_RKP
 import io.github.vvb2060.keyattestation.repository.AttestationData
+import io.github.vvb2060.keyattestation.repository.AttestationPair
 import io.github.vvb2060.keyattestation.repository.BaseData
 import io.github.vvb2060.keyattestation.repository.RemoteProvisioningData
+import io.github.vvb2060.keyattestation.util.Resource
 import rikka.recyclerview.IdBasedRecyclerViewAdapter
 
 class HomeAdapter(listener: Listener) : IdBasedRecyclerViewAdapter() {
@@ -25,66 +27,57 @@ class HomeAdapter(listener: Listener) : IdBasedRecyclerViewAdapter() {
         setListener(listener)
     }
 
+    private fun statusHeader(status: RootPublicKey.Status) = when (status) {
+        RootPublicKey.Status.NULL -> HeaderData(
+                R.string.error_remote_key_provisioning,
+                0,
+                R.drawable.ic_error_outline_24,
+                rikka.material.R.attr.colorInactive)
+        RootPublicKey.Status.FAILED -> HeaderData(
+                R.string.cert_chain_not_trusted,
+                R.string.cert_chain_not_trusted_summary,
+                R.drawable.ic_error_outline_24,
+                rikka.material.R.attr.colorAlert)
+        RootPublicKey.Status.UNKNOWN -> HeaderData(
+                R.string.unknown_root_cert,
+                R.string.unknown_root_cert_summary,
+                R.drawable.ic_error_outline_24,
+                rikka.material.R.attr.colorWarning)
+        RootPublicKey.Status.AOSP -> HeaderData(
+                R.string.aosp_root_cert,
+                R.string.aosp_root_cert_summary,
+                R.drawable.ic_error_outline_24,
+                rikka.material.R.attr.colorWarning)
+        RootPublicKey.Status.GOOGLE -> HeaderData(
+                R.string.google_root_cert,
+                R.string.google_root_cert_summary,
+                R.drawable.ic_trustworthy_24,
+                rikka.material.R.attr.colorSafe)
+        RootPublicKey.Status.GOOGLE_RKP -> HeaderData(
+                R.string.google_root_cert_rkp,
+                R.string.google_root_cert_rkp_summary,
+                R.drawable.ic_trustworthy_24,
+                rikka.material.R.attr.colorSafe)
+        RootPublicKey.Status.KNOX -> HeaderData(
+                R.string.knox_root_cert,
+                R.string.knox_root_cert_summary,
+                R.drawable.ic_trustworthy_24,
+                rikka.material.R.attr.colorSafe)
+        RootPublicKey.Status.OEM -> HeaderData(
+                R.string.oem_root_cert,
+                R.string.oem_root_cert_summary,
+                R.drawable.ic_trustworthy_24,
+                rikka.material.R.attr.colorSafe)
+    }
+
     fun updateData(baseData: BaseData) {
         clear()
-        when (baseData.status) {
-            RootPublicKey.Status.NULL -> {
-                addItem(HeaderViewHolder.CREATOR, HeaderData(
-                        R.string.error_remote_key_provisioning,
-                        0,
-                        R.drawable.ic_error_outline_24,
-                        rikka.material.R.attr.colorInactive), ID_CERT_STATUS)
-            }
-            RootPublicKey.Status.FAILED -> {
-                addItem(HeaderViewHolder.CREATOR, HeaderData(
-                        R.string.cert_chain_not_trusted,
-                        R.string.cert_chain_not_trusted_summary,
-                        R.drawable.ic_error_outline_24,
-                        rikka.material.R.attr.colorAlert), ID_CERT_STATUS)
-            }
-            RootPublicKey.Status.UNKNOWN -> {
-                addItem(HeaderViewHolder.CREATOR, HeaderData(
-                        R.string.unknown_root_cert,
-                        R.string.unknown_root_cert_summary,
-                        R.drawable.ic_error_outline_24,
-                        rikka.material.R.attr.colorWarning), ID_CERT_STATUS)
-            }
-            RootPublicKey.Status.AOSP -> {
-                addItem(HeaderViewHolder.CREATOR, HeaderData(
-                        R.string.aosp_root_cert,
-                        R.string.aosp_root_cert_summary,
-                        R.drawable.ic_error_outline_24,
-                        rikka.material.R.attr.colorWarning), ID_CERT_STATUS)
-            }
-            RootPublicKey.Status.GOOGLE -> {
-                addItem(HeaderViewHolder.CREATOR, HeaderData(
-                        R.string.google_root_cert,
-                        R.string.google_root_cert_summary,
-                        R.drawable.ic_trustworthy_24,
-                        rikka.material.R.attr.colorSafe), ID_CERT_STATUS)
-            }
-            RootPublicKey.Status.GOOGLE_RKP -> {
-                addItem(HeaderViewHolder.CREATOR, HeaderData(
-                        R.string.google_root_cert_rkp,
-                        R.string.google_root_cert_rkp_summary,
-                        R.drawable.ic_trustworthy_24,
-                        rikka.material.R.attr.colorSafe), ID_CERT_STATUS)
-            }
-            RootPublicKey.Status.KNOX -> {
-                addItem(HeaderViewHolder.CREATOR, HeaderData(
-                        R.string.knox_root_cert,
-                        R.string.knox_root_cert_summary,
-                        R.drawable.ic_trustworthy_24,
-                        rikka.material.R.attr.colorSafe), ID_CERT_STATUS)
-            }
-            RootPublicKey.Status.OEM -> {
-                addItem(HeaderViewHolder.CREATOR, HeaderData(
-                        R.string.oem_root_cert,
-                        R.string.oem_root_cert_summary,
-                        R.drawable.ic_trustworthy_24,
-                        rikka.material.R.attr.colorSafe), ID_CERT_STATUS)
-            }
+        if (baseData is AttestationPair) {
+            updateData(baseData)
+            notifyDataSetChanged()
+            return
         }
+        addItem(HeaderViewHolder.CREATOR, statusHeader(baseData.status), ID_CERT_STATUS)
 
         var id = ID_CERT_INFO_START
         addItem(SubtitleViewHolder.CREATOR, CommonData(
@@ -190,6 +183,75 @@ class HomeAdapter(listener: Listener) : IdBasedRecyclerViewAdapter() {
         }
     }
 
+    private fun sideHeader(result: Resource<AttestationData>): HeaderData {
+        result.data?.let { return statusHeader(it.status) }
+        val e = result.error as AttestationException
+        return HeaderData(
+                e.titleResId,
+                e.descriptionResId,
+                R.drawable.ic_error_outline_24,
+                rikka.material.R.attr.colorInactive)
+    }
+
+    private fun updateData(pair: AttestationPair) {
+        var id = ID_CERT_INFO_START
+        addItem(SubtitleViewHolder.CREATOR, CommonData(
+                R.string.compare_strongbox,
+                R.string.compare_strongbox_description), id++)
+        addItem(CommonItemViewHolder.SIDE_CREATOR, SideData(
+                R.string.security_level_trusted_environment,
+                sideHeader(pair.tee)), id++)
+        addItem(CommonItemViewHolder.SIDE_CREATOR, SideData(
+                R.string.security_level_strongbox,
+                sideHeader(pair.strongBox)), id)
+
+        val tee = pair.tee.data?.showAttestation
+        val strongBox = pair.strongBox.data?.showAttestation
+        if (tee == null && strongBox == null) return
+
+        id = ID_DESCRIPTION_START
+        addItem(CommonItemViewHolder.COMPARISON_CREATOR, ComparisonData(
+                R.string.attestation,
+                R.string.attestation_version_description,
+                tee?.let { Attestation.attestationVersionToString(it.attestationVersion) },
+                strongBox?.let { Attestation.attestationVersionToString(it.attestationVersion) }),
+                id++)
+
+        addItem(CommonItemViewHolder.COMPARISON_CREATOR, ComparisonData(
+                R.string.keymaster,
+                R.string.keymaster_version_description,
+                tee?.let { Attestation.keymasterVersionToString(it.keymasterVersion) },
+                strongBox?.let { Attestation.keymasterVersionToString(it.keymasterVersion) }),
+                id++)
+
+        addItem(CommonItemViewHolder.COMPARISON_CREATOR, ComparisonData(
+                R.string.unique_id,
+                R.string.unique_id_description,
+                tee?.uniqueId?.let { BaseEncoding.base16().lowerCase().encode(it) },
+                strongBox?.uniqueId?.let { BaseEncoding.base16().lowerCase().encode(it) }), id)
+
+        id = ID_AUTHORIZATION_LIST_START
+        addItem(SubtitleViewHolder.CREATOR, CommonData(
+                R.string.authorization_list,
+                R.string.authorization_list_description), id++)
+
+        // an item is compared whichever list enforces it
+        val teeItems = tee?.let { merge(it) }
+        val strongBoxItems = strongBox?.let { merge(it) }
+        for (i in authorizationItemTitles.indices) {
+            val t = teeItems?.get(i)
+            val s = strongBoxItems?.get(i)
+            if (t == null && s == null) {
+                continue
+            }
+
+            addItem(CommonItemViewHolder.COMPARISON_CREATOR, ComparisonData(
+                    authorizationItemTitles[i],
+                    authorizationItemDescriptions[i],
+                    t, s), id++)
+        }
+    }
+
     private fun updateData(rkpData: RemoteProvisioningData) {
         if (rkpData.status == RootPublicKey.Status.NULL) {
             removeItemAt(1)
@@ -277,6 +339,12 @@ class HomeAdapter(listener: Listener) : IdBasedRecyclerViewAdapter() {
         private const val ID_KNOX_START = 5000L
         private const val ID_ERROR_MESSAGE = 100000L
 
+        private fun merge(attestation: Attestation): Array<String?> {
+            val tee = createAuthorizationItems(attestation.teeEnforced)
+            val sw = createAuthorizationItems(attestation.softwareEnforced)
+            return Array(tee.size) { tee[it] ?: sw[it] }
+        }
+
         private fun createAuthorizationItems(list: AuthorizationList): Array<String?> {
             return arrayOf(
                     list.purposes?.let { AuthorizationList.purposesToString(it) },
@@ -51,6 +51,10 @@ class HomeFragment : AppFragment(), HomeAdapter.Listener, MenuProvider {
         viewModel.import(it)
     }
 
+    private val importTrustBundle = registerForActivityResult(GetContent()) {
+        viewModel.importTrustBundle(it)
+    }
+
     private val adapter by lazy {
         HomeAdapter(this)
     }
@@ -143,6 +147,7 @@ class HomeFragment : AppFragment(), HomeAdapter.Listener, MenuProvider {
         }
 
         menu.findItem(R.id.menu_use_strongbox)?.isVisible = !viewModel.preferSak
+        menu.findItem(R.id.menu_compare_strongbox)?.isVisible = !viewModel.preferSak
         menu.findItem(R.id.menu_use_attest_key)?.isVisible = !viewModel.preferSak
         menu.findItem(R.id.menu_import_attest_key)?.isVisible = !viewModel.preferSak
                 && viewModel.preferAttestKey
@@ -168,11 +173,14 @@ class HomeFragment : AppFragment(), HomeAdapter.Listener, MenuProvider {
         menu.findItem(R.id.menu_id_type_meid).isChecked = viewModel.preferIdAttestationMEID
         menu.findItem(R.id.menu_include_unique_id).isChecked = viewModel.preferIncludeUniqueId
         menu.findItem(R.id.menu_use_sak).isChecked = viewModel.preferSak
+        menu.findItem(R.id.menu_update_revocation_list).isChecked =
+            viewModel.preferUpdateRevocationList
         if (!viewModel.hasSak) {
             menu.removeItem(R.id.menu_use_sak)
         }
         if (!viewModel.hasStrongBox) {
             menu.removeItem(R.id.menu_use_strongbox)
+            menu.removeItem(R.id.menu_compare_strongbox)
         }
         if (!viewModel.hasAttestKey) {
             menu.removeItem(R.id.menu_use_attest_key)
@@ -211,6 +219,9 @@ class HomeFragment : AppFragment(), HomeAdapter.Listener, MenuProvider {
                 viewModel.preferStrongBox = status
                 viewModel.load()
             }
+            R.id.menu_compare_strongbox -> {
+                viewModel.load(both = true)
+            }
             R.id.menu_use_attest_key -> {
                 viewModel.preferAttestKey = status
                 viewModel.load()
@@ -235,6 +246,9 @@ class HomeFragment : AppFragment(), HomeAdapter.Listener, MenuProvider {
                 viewModel.preferIncludeUniqueId = status
                 viewModel.load()
             }
+            R.id.menu_update_revocation_list -> {
+                viewModel.preferUpdateRevocationList = status
+            }
             R.id.menu_rkp_test -> {
                 viewModel.rkp()
             }
@@ -250,6 +264,9 @@ class HomeFragment : AppFragment(), HomeAdapter.Listener, MenuProvider {
             R.id.menu_import_attest_key -> {
                 import.launch("text/xml")
             }
+            R.id.menu_import_trust_bundle -> {
+                importTrustBundle.launch("*/*")
+            }
             R.id.menu_about -> {
                 showAboutDialog()
             }
@@ -1,5 +1,6 @@
 package io.github.vvb2060.keyattestation.home
 
+import android.annotation.SuppressLint
 import android.app.admin.DevicePolicyManager
 import android.content.ContentResolver
 import android.content.Context
@@ -9,6 +10,7 @@ import android.net.Uri
 import android.os.Build
 import android.provider.OpenableColumns
 import android.util.Log
+import androidx.arch.core.executor.ArchTaskExecutor
 import androidx.core.content.edit
 import androidx.lifecycle.LiveData
 import androidx.lifecycle.MutableLiveData
@@ -19,11 +21,16 @@ import androidx.lifecycle.viewmodel.initializer
 import androidx.lifecycle.viewmodel.viewModelFactory
 import com.samsung.android.security.keystore.AttestationUtils
 import io.github.vvb2060.keyattestation.AppApplication
+import io.github.vvb2060.keyattestation.R
+import io.github.vvb2060.keyattestation.attestation.RootPublicKey
 import io.github.vvb2060.keyattestation.keystore.KeyStoreManager
 import io.github.vvb2060.keyattestation.repository.AttestationRepository
 import io.github.vvb2060.keyattestation.repository.BaseData
 import io.github.vvb2060.keyattestation.util.Resource
+import io.github.vvb2060.keyattestation.util.TaskScheduler
+import io.github.vvb2060.keyattestation.util.TaskScheduler.Lane
 import rikka.shizuku.Shizuku
+import java.util.concurrent.ForkJoinPool
 
 class HomeViewModel(
         pm: PackageManager,
@@ -38,6 +45,12 @@ class HomeViewModel(
                 HomeViewModel(app.packageManager, app.contentResolver, sp)
             }
         }
+
+        // load, load(uri) and rkp all replace the shown data, so a newer one cancels the others
+        private const val TASK_DATA = "data"
+        private const val TASK_SAVE = "save"
+        private const val TASK_IMPORT = "import"
+        private const val TASK_IMPORT_TRUST_BUNDLE = "import_trust_bundle"
     }
 
     private val attestationRepository = AttestationRepository()
@@ -119,6 +132,13 @@ class HomeViewModel(
             sp.edit { putBoolean("prefer_sak", value) }
         }
 
+    var preferUpdateRevocationList = sp.getBoolean("prefer_update_revocation_list", false)
+        set(value) {
+            field = value
+            sp.edit { putBoolean("prefer_update_revocation_list", value) }
+            if (value) AppApplication.refreshRevocationList()
+        }
+
     val canCheckRkp: Boolean
         get() {
             if (KeyStoreManager.getRemoteKeyStore() == null) return false
@@ -133,8 +153,22 @@ class HomeViewModel(
 
     fun getAttestationData(): LiveData<Resource<BaseData>> = attestationData
 
-    fun save(uri: Uri?) = AppApplication.executor.execute {
-        if (uri == null || !attestationRepository.hasCertificates()) return@execute
+    private fun submit(lane: Lane, key: String, task: TaskScheduler.Task) =
+            AppApplication.scheduler.submit(lane, key, task)
+
+    /**
+     * Shows the data of the task, unless it is cancelled by the time the main thread gets to it.
+     * A newer task cancels this one before it runs, so its data is always shown after this.
+     */
+    @SuppressLint("RestrictedApi")
+    private fun post(task: TaskScheduler.Handle, data: Resource<BaseData>) {
+        ArchTaskExecutor.getInstance().postToMainThread {
+            if (!task.isCancelled) attestationData.value = data
+        }
+    }
+
+    fun save(uri: Uri?) = submit(Lane.FILE, TASK_SAVE) {
+        if (uri == null || !attestationRepository.hasCertificates()) return@submit
 
         var name = uri.toString()
         val projection = arrayOf(OpenableColumns.DISPLAY_NAME)
@@ -156,20 +190,35 @@ class HomeViewModel(
         }
     }
 
-    fun load(uri: Uri?) = AppApplication.executor.execute {
-        if (uri == null) return@execute
+    fun load(uri: Uri?) = submit(Lane.FILE, TASK_DATA) { task ->
+        if (uri == null) return@submit
 
-        attestationData.postValue(Resource.loading(null))
+        post(task, Resource.loading(null))
 
         val result = cr.openFileDescriptor(uri, "r").use {
-            attestationRepository.loadCerts(it)
+            attestationRepository.loadCertChains(it)
+        }
+        val chains = result.data
+        if (task.isCancelled) return@submit
+        if (chains.isNullOrEmpty()) {
+            post(task, Resource.error(result.error, null))
+            return@submit
         }
 
-        attestationData.postValue(result)
+        // every chain is kept for save, only the first one is shown
+        if (chains.size > 1) {
+            AppApplication.toast(AppApplication.app.getString(R.string.cert_chains_loaded,
+                    chains.size))
+        }
+        post(task, Resource.success(chains[0]))
     }
 
-    fun load(reset: Boolean = false) = AppApplication.executor.execute {
-        attestationData.postValue(Resource.loading(null))
+    /**
+     * Attests with the options of the menu. With [both], attests with the TEE and StrongBox at
+     * the same time instead, to compare them side by side.
+     */
+    fun load(reset: Boolean = false, both: Boolean = false) = submit(Lane.KEYSTORE, TASK_DATA) { task ->
+        post(task, Resource.loading(null))
 
         var uniqueIdIncluded = false
         var useSak = false
@@ -188,15 +237,22 @@ class HomeViewModel(
         val includeProps = hasDeviceIds && preferIncludeProps &&
                 Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
 
+        if (both && hasStrongBox && !useSak) {
+            // the StrongBox side runs on the common pool while this lane attests with the TEE
+            val pair = attestationRepository.attestBoth(reset, useAttestKey, includeProps,
+                    uniqueIdIncluded, idFlags, false, ForkJoinPool.commonPool())
+            post(task, Resource.success(pair))
+            return@submit
+        }
 
         val result = attestationRepository.attest(reset, useAttestKey, useStrongBox,
                 includeProps, uniqueIdIncluded, idFlags, useSak)
 
-        attestationData.postValue(result)
+        post(task, result)
     }
 
-    fun import(uri: Uri?) = AppApplication.executor.execute {
-        if (uri == null || !hasAttestKey) return@execute
+    fun import(uri: Uri?) = submit(Lane.KEYSTORE, TASK_IMPORT) {
+        if (uri == null || !hasAttestKey) return@submit
 
         val useStrongBox = hasStrongBox && preferStrongBox
         try {
@@ -210,15 +266,29 @@ class HomeViewModel(
         }
     }
 
-    fun rkp(newHostname: String? = null) = AppApplication.executor.execute {
-        if (!canCheckRkp && !preferShizuku) return@execute
+    fun importTrustBundle(uri: Uri?) = submit(Lane.FILE, TASK_IMPORT_TRUST_BUNDLE) {
+        if (uri == null) return@submit
+
+        try {
+            val size = cr.openInputStream(uri).use {
+                RootPublicKey.importTrustBundle(it)
+            }
+            AppApplication.toast(AppApplication.app.getString(R.string.trust_bundle_imported, size))
+        } catch (e: Exception) {
+            Log.e(AppApplication.TAG, "importTrustBundle: ", e)
+            AppApplication.toast(e.message)
+        }
+    }
+
+    fun rkp(newHostname: String? = null) = submit(Lane.NETWORK, TASK_DATA) { task ->
+        if (!canCheckRkp && !preferShizuku) return@submit
 
-        attestationData.postValue(Resource.loading(null))
+        post(task, Resource.loading(null))
 
         val useStrongBox = hasStrongBox && preferStrongBox && attestationRepository.canRkp(true)
         attestationRepository.setHostname(newHostname)
         val result = attestationRepository.checkRkp(useStrongBox)
 
-        attestationData.postValue(result)
+        post(task, result)
     }
 }
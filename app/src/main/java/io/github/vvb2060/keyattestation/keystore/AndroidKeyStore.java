@@ -26,17 +26,21 @@ import android.util.Log;
 
 import com.samsung.android.security.keystore.AttestParameterSpec;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.security.KeyPairGenerator;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.ProviderException;
+import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
 import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.security.auth.x500.X500Principal;
 
@@ -45,8 +49,18 @@ import io.github.vvb2060.keyattestation.BuildConfig;
 import rikka.shizuku.ShizukuApiConstants;
 
 public class AndroidKeyStore extends IAndroidKeyStore.Stub {
+    private record AttestKey(String alias, AttestKeyPool.Options options) {
+    }
+
+    private static final int POOL_LOW_WATERMARK = 1;
+    private static final int POOL_HIGH_WATERMARK = 3;
+
     private final KeyStore keyStore;
-    private final KeyPairGenerator keyPairGenerator;
+    // one per security level, so that TEE and StrongBox attestations can run at the same time
+    private final KeyPairGenerator[] keyPairGenerators = new KeyPairGenerator[2];
+    private final AttestKeyPool[] pools = new AttestKeyPool[2];
+    // attest key aliases requested by the client, mapped to the pooled keys standing in for them
+    private final Map<String, AttestKey> attestKeys = new ConcurrentHashMap<>();
     private int clientUid = -1;
 
     public AndroidKeyStore() throws Exception {
@@ -57,8 +71,10 @@ public class AndroidKeyStore extends IAndroidKeyStore.Stub {
         }
         keyStore = KeyStore.getInstance("AndroidKeyStore");
         keyStore.load(null);
-        keyPairGenerator = KeyPairGenerator.getInstance(
-                KeyProperties.KEY_ALGORITHM_EC, "AndroidKeyStore");
+        for (int i = 0; i < keyPairGenerators.length; i++) {
+            keyPairGenerators[i] = KeyPairGenerator.getInstance(
+                    KeyProperties.KEY_ALGORITHM_EC, "AndroidKeyStore");
+        }
     }
 
     private static void fixEnv() throws Exception {
@@ -121,42 +137,17 @@ public class AndroidKeyStore extends IAndroidKeyStore.Stub {
         return super.onTransact(code, data, reply, flags);
     }
 
-    @Override
-    public byte[] getCertificateChain(String alias) {
-        try {
-            var chain = keyStore.getCertificateChain(alias);
-            if (chain == null) {
-                return null;
-            }
-            var buf = new ByteArrayOutputStream(8192);
-            for (var cert : chain) {
-                buf.write(cert.getEncoded());
-            }
-            return buf.toByteArray();
-        } catch (Exception e) {
-            Log.e(AppApplication.TAG, "getCertificateChain", e);
-            throw new IllegalStateException(e.getMessage());
-        }
-    }
-
-    @Override
-    public boolean containsAlias(String alias) {
-        try {
-            return keyStore.containsAlias(alias);
-        } catch (KeyStoreException e) {
-            Log.e(AppApplication.TAG, "containsAlias", e);
-            throw new IllegalStateException(e.getMessage());
-        }
-    }
-
     @Override
     public void deleteAllEntry() {
         try {
             var aliases = keyStore.aliases();
             while (aliases.hasMoreElements()) {
                 var alias = aliases.nextElement();
+                // pooled keys have not attested anything yet, so the next attestation takes one
+                if (isPooled(alias)) continue;
                 keyStore.deleteEntry(alias);
             }
+            attestKeys.clear();
         } catch (KeyStoreException e) {
             Log.e(AppApplication.TAG, "deleteAllEntry", e);
             throw new IllegalStateException(e.getMessage());
@@ -185,7 +176,7 @@ public class AndroidKeyStore extends IAndroidKeyStore.Stub {
         }
     }
 
-    private static int[] flagsToArray(int idFlags) {
+    static int[] flagsToArray(int idFlags) {
         int i = 0;
         var array = new int[3];
         if ((idFlags & DevicePolicyManager.ID_TYPE_SERIAL) != 0) {
@@ -200,13 +191,17 @@ public class AndroidKeyStore extends IAndroidKeyStore.Stub {
         return Arrays.copyOf(array, i);
     }
 
-    private static Object genParameter(String alias,
-                                       String attestKeyAlias,
-                                       boolean useStrongBox,
-                                       boolean includeProps,
-                                       boolean uniqueIdIncluded,
-                                       int[] attestationIds) {
+    static Object genParameter(String alias,
+                               String attestKeyAlias,
+                               boolean useStrongBox,
+                               boolean includeProps,
+                               boolean uniqueIdIncluded,
+                               int[] attestationIds,
+                               byte[] challenge) {
         var now = new Date();
+        if (challenge == null) {
+            challenge = now.toString().getBytes();
+        }
         boolean attestKey = Objects.equals(alias, attestKeyAlias);
         var purposes = attestKey ? KeyProperties.PURPOSE_ATTEST_KEY : KeyProperties.PURPOSE_SIGN;
 
@@ -214,7 +209,7 @@ public class AndroidKeyStore extends IAndroidKeyStore.Stub {
                 .setAlgorithmParameterSpec(new ECGenParameterSpec("secp256r1"))
                 .setDigests(KeyProperties.DIGEST_SHA256)
                 .setCertificateNotBefore(now)
-                .setAttestationChallenge(now.toString().getBytes());
+                .setAttestationChallenge(challenge);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && useStrongBox) {
             builder.setIsStrongBoxBacked(true);
         }
@@ -250,40 +245,114 @@ public class AndroidKeyStore extends IAndroidKeyStore.Stub {
         return builder.build();
     }
 
-    @Override
-    public byte[] generateKeyPair(String alias,
-                                  String attestKeyAlias,
-                                  boolean useStrongBox,
-                                  boolean includeProps,
-                                  boolean uniqueIdIncluded,
-                                  int idFlags,
-                                  boolean useSak) {
-        var params = (KeyGenParameterSpec) genParameter(alias, attestKeyAlias, useStrongBox,
-                includeProps, uniqueIdIncluded, flagsToArray(idFlags));
-        try {
+    private void generateKeyPair(String alias, String attestKeyAlias,
+                                 AttestationRequest request, boolean useSak) throws Exception {
+        var params = (KeyGenParameterSpec) genParameter(alias, attestKeyAlias,
+                request.useStrongBox, request.includeProps, request.uniqueIdIncluded,
+                flagsToArray(request.idFlags), request.challenge);
+        var keyPairGenerator = keyPairGenerators[request.useStrongBox ? 1 : 0];
+        synchronized (keyPairGenerator) {
             keyPairGenerator.initialize(params);
             keyPairGenerator.generateKeyPair();
-            if (useSak) {
-                var utils = new com.samsung.android.security.keystore.AttestationUtils();
-                var spec = genSakParameter(params);
-                Iterable<byte[]> certChain;
-                if (spec.isDeviceAttestation()) {
-                    certChain = utils.attestDevice(spec);
-                } else {
-                    certChain = utils.attestKey(spec);
-                }
-                utils.storeCertificateChain(alias, certChain);
+        }
+        if (useSak) {
+            var utils = new com.samsung.android.security.keystore.AttestationUtils();
+            var spec = genSakParameter(params);
+            Iterable<byte[]> certChain;
+            if (spec.isDeviceAttestation()) {
+                certChain = utils.attestDevice(spec);
+            } else {
+                certChain = utils.attestKey(spec);
             }
-            return null;
-        } catch (Exception exception) {
-            Log.e(AppApplication.TAG, "generateKeyPair", exception);
-            var buf = new ByteArrayOutputStream(2048);
-            try (var out = new ObjectOutputStream(buf)) {
-                out.writeObject(exception);
-            } catch (IOException e) {
-                throw new IllegalStateException(e.getMessage());
+            utils.storeCertificateChain(alias, certChain);
+        }
+    }
+
+    private Certificate[] getCertificateChain(String alias) throws KeyStoreException {
+        var chain = keyStore.getCertificateChain(alias);
+        if (chain == null) {
+            throw new ProviderException("Unable to get certificate chain");
+        }
+        return chain;
+    }
+
+    private synchronized boolean isPooled(String alias) {
+        for (var pool : pools) {
+            if (pool != null && pool.contains(alias)) return true;
+        }
+        return false;
+    }
+
+    private synchronized AttestKeyPool getPool(boolean useStrongBox) {
+        int index = useStrongBox ? 1 : 0;
+        if (pools[index] == null) {
+            pools[index] = new AttestKeyPool(keyStore, useStrongBox,
+                    POOL_LOW_WATERMARK, POOL_HIGH_WATERMARK);
+        }
+        return pools[index];
+    }
+
+    /**
+     * @return the alias of the key to attest with: the requested one if it exists, such as an
+     * imported key box, else the key standing in for it since the last reset if it has the same
+     * options, else a fresh one from the pool, generated now if the pool has none ready
+     */
+    private String getAttestKey(AttestationRequest request) throws Exception {
+        var alias = request.attestKeyAlias;
+        if (keyStore.containsAlias(alias)) {
+            return alias;
+        }
+        var options = AttestKeyPool.Options.of(request);
+        var current = attestKeys.remove(alias);
+        if (current != null) {
+            if (current.options.equals(options) && keyStore.containsAlias(current.alias)) {
+                attestKeys.put(alias, current);
+                return current.alias;
+            }
+            keyStore.deleteEntry(current.alias);
+        }
+        var pool = getPool(request.useStrongBox);
+        String pooled;
+        do {
+            pooled = pool.take(options);
+        } while (pooled != null && !keyStore.containsAlias(pooled));
+        if (pooled == null) {
+            pooled = pool.newAlias(options);
+            generateKeyPair(pooled, pooled, request, false);
+        }
+        attestKeys.put(alias, new AttestKey(pooled, options));
+        return pooled;
+    }
+
+    @Override
+    public byte[] attest(AttestationRequest request) {
+        // the pool of the same security level waits, so that it does not compete for the hardware
+        AttestKeyPool pool = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            pool = getPool(request.useStrongBox);
+            pool.pause();
+        }
+        try {
+            if (request.reset) {
+                deleteAllEntry();
+            }
+            var attestKeyAlias = request.attestKeyAlias;
+            if (attestKeyAlias != null) {
+                attestKeyAlias = getAttestKey(request);
+            }
+            generateKeyPair(request.alias, attestKeyAlias, request, request.useSak);
+
+            var chains = new ArrayList<Certificate[]>(2);
+            chains.add(getCertificateChain(request.alias));
+            if (attestKeyAlias != null) {
+                chains.add(getCertificateChain(attestKeyAlias));
             }
-            return buf.toByteArray();
+            return AttestationResponse.success(chains);
+        } catch (Exception exception) {
+            Log.e(AppApplication.TAG, "attest", exception);
+            return AttestationResponse.failure(exception);
+        } finally {
+            if (pool != null) pool.resume();
         }
     }
 
@@ -298,23 +367,11 @@ public class AndroidKeyStore extends IAndroidKeyStore.Stub {
         var challenge = new Date().toString().getBytes();
         try {
             var chain = AttestationUtils.attestDeviceIds(context, attestationIds, challenge);
-            var buf = new ByteArrayOutputStream(8192);
-            buf.write(1);
-            for (var cert : chain) {
-                buf.write(cert.getEncoded());
-            }
-            return buf.toByteArray();
+            return AttestationResponse.success(Collections.<Certificate[]>singletonList(chain));
         } catch (DeviceIdAttestationException exception) {
             Log.e(AppApplication.TAG, "attestDeviceIds", exception);
-            var buf = new ByteArrayOutputStream(2048);
-            buf.write(0);
-            try (var out = new ObjectOutputStream(buf)) {
-                out.writeObject(exception);
-            } catch (IOException e) {
-                throw new IllegalStateException(e.getMessage());
-            }
-            return buf.toByteArray();
-        } catch (CertificateEncodingException | IOException e) {
+            return AttestationResponse.failure(exception);
+        } catch (CertificateEncodingException e) {
             throw new IllegalStateException(e.getMessage());
         }
     }
@@ -0,0 +1,207 @@
+package io.github.vvb2060.keyattestation.keystore;
+
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Log;
+
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.github.vvb2060.keyattestation.AppApplication;
+
+/**
+ * Attest keys of one security level, generated ahead of use on a background thread.
+ * <p>
+ * Keys are named after the prefix given with the options and generated with the options of the
+ * last {@link #take} call, which are part of their certificates. When a take leaves at most the
+ * low watermark of keys, the pool is refilled up to the high watermark, one key at a time. Keys
+ * generated with other options are deleted instead of handed out. The refill waits while an
+ * attestation of the same security level is in flight.
+ */
+final class AttestKeyPool {
+
+    record Options(String prefix, boolean includeProps, boolean uniqueIdIncluded, int idFlags,
+                   byte[] challenge) {
+        static Options of(AttestationRequest request) {
+            return new Options(request.attestKeyAlias + "_pool", request.includeProps,
+                    request.uniqueIdIncluded, request.idFlags, request.challenge);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Options other
+                    && prefix.equals(other.prefix)
+                    && includeProps == other.includeProps
+                    && uniqueIdIncluded == other.uniqueIdIncluded
+                    && idFlags == other.idFlags
+                    && Arrays.equals(challenge, other.challenge);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(prefix, includeProps, uniqueIdIncluded, idFlags)
+                    * 31 + Arrays.hashCode(challenge);
+        }
+    }
+
+    private final KeyStore keyStore;
+    private final boolean useStrongBox;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final ExecutorService executor;
+    private final ArrayDeque<String> ready = new ArrayDeque<>();
+    private KeyPairGenerator keyPairGenerator;
+    private Options options;
+    private int serial;
+    private int paused;
+    private boolean filling;
+
+    AttestKeyPool(KeyStore keyStore, boolean useStrongBox, int lowWatermark, int highWatermark) {
+        this.keyStore = keyStore;
+        this.useStrongBox = useStrongBox;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = Math.max(lowWatermark + 1, highWatermark);
+        var name = useStrongBox ? "AttestKeyPool-strongbox" : "AttestKeyPool";
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            var thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the alias of a ready attest key generated with the options, now owned by the
+     * caller, or null if there is none yet
+     */
+    synchronized String take(Options options) {
+        if (!options.equals(this.options)) {
+            if (this.options == null) {
+                // before the caller can generate a key with the prefix itself
+                deleteLeftovers(options.prefix);
+            } else {
+                Log.i(AppApplication.TAG, "Attest key options changed, dropping "
+                        + ready.size() + " pooled keys");
+                var stale = new ArrayList<>(ready);
+                executor.execute(() -> stale.forEach(this::delete));
+            }
+            ready.clear();
+            this.options = options;
+        }
+        var alias = ready.pollFirst();
+        if (!filling && ready.size() <= lowWatermark) {
+            filling = true;
+            executor.execute(this::fill);
+        }
+        return alias;
+    }
+
+    /**
+     * @return an unused alias with the prefix of the options, for a key the caller generates
+     * itself when the pool has none ready
+     */
+    synchronized String newAlias(Options options) {
+        return options.prefix + "_" + serial++;
+    }
+
+    /**
+     * @return whether the alias is a ready key of this pool, which a reset should keep
+     */
+    synchronized boolean contains(String alias) {
+        return ready.contains(alias);
+    }
+
+    /**
+     * Holds the refill back until the matching {@link #resume}, before its next key.
+     */
+    synchronized void pause() {
+        paused++;
+    }
+
+    synchronized void resume() {
+        if (--paused == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Deletes the keys an earlier process left with the prefix, before any key is generated.
+     */
+    private void deleteLeftovers(String prefix) {
+        try {
+            for (var alias : Collections.list(keyStore.aliases())) {
+                if (alias.startsWith(prefix + "_")) {
+                    delete(alias);
+                }
+            }
+        } catch (Exception e) {
+            Log.w(AppApplication.TAG, "List attest keys", e);
+        }
+    }
+
+    private void delete(String alias) {
+        try {
+            keyStore.deleteEntry(alias);
+        } catch (Exception e) {
+            Log.w(AppApplication.TAG, "Delete attest key " + alias, e);
+        }
+    }
+
+    private void fill() {
+        while (true) {
+            Options options;
+            String alias;
+            synchronized (this) {
+                while (paused > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        filling = false;
+                        return;
+                    }
+                }
+                if (ready.size() >= highWatermark) {
+                    filling = false;
+                    return;
+                }
+                options = this.options;
+                alias = options.prefix + "_" + serial++;
+            }
+            try {
+                generate(alias, options);
+            } catch (Exception e) {
+                Log.w(AppApplication.TAG, "Generate attest key " + alias, e);
+                delete(alias);
+                synchronized (this) {
+                    filling = false;
+                }
+                return;
+            }
+            synchronized (this) {
+                if (options.equals(this.options)) {
+                    ready.addLast(alias);
+                    continue;
+                }
+            }
+            delete(alias);
+        }
+    }
+
+    private void generate(String alias, Options options) throws Exception {
+        if (keyPairGenerator == null) {
+            keyPairGenerator = KeyPairGenerator.getInstance(
+                    KeyProperties.KEY_ALGORITHM_EC, "AndroidKeyStore");
+        }
+        var params = (KeyGenParameterSpec) AndroidKeyStore.genParameter(alias, alias,
+                useStrongBox, options.includeProps, options.uniqueIdIncluded,
+                AndroidKeyStore.flagsToArray(options.idFlags), options.challenge);
+        keyPairGenerator.initialize(params);
+        keyPairGenerator.generateKeyPair();
+    }
+}
@@ -0,0 +1,96 @@
+package io.github.vvb2060.keyattestation.keystore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reply of {@link IAndroidKeyStore#attest} and {@link IAndroidKeyStore#attestDeviceIds}.
+ * <p>
+ * A status byte is followed either by the number of chains, each the number of its
+ * certificates and every certificate prefixed by its length, or by the {@link KeyStoreError}
+ * that failed the attestation. Integers are big-endian. Certificates are parsed from their own slice of
+ * the reply, without scanning for the end of the previous one.
+ */
+public final class AttestationResponse {
+    private static final int ERROR = 0;
+    private static final int OK = 1;
+
+    private AttestationResponse() {
+    }
+
+    static byte[] success(List<Certificate[]> chains) throws CertificateEncodingException {
+        var buf = new ByteArrayOutputStream(8192);
+        try (var out = new DataOutputStream(buf)) {
+            out.writeByte(OK);
+            out.writeInt(chains.size());
+            for (var chain : chains) {
+                out.writeInt(chain.length);
+                for (var cert : chain) {
+                    var encoded = cert.getEncoded();
+                    out.writeInt(encoded.length);
+                    out.write(encoded);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+        return buf.toByteArray();
+    }
+
+    static byte[] failure(Exception exception) {
+        var buf = new ByteArrayOutputStream(512);
+        try (var out = new DataOutputStream(buf)) {
+            out.writeByte(ERROR);
+            KeyStoreError.write(out, exception);
+        } catch (IOException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+        return buf.toByteArray();
+    }
+
+    /**
+     * @return the chains, the attested key first
+     * @throws KeyStoreError the failure of the attestation
+     */
+    public static List<List<X509Certificate>> read(byte[] data, CertificateFactory factory)
+            throws KeyStoreError, CertificateException, IOException {
+        var buffer = ByteBuffer.wrap(data);
+        try {
+            if (buffer.get() != OK) {
+                var in = new ByteArrayInputStream(data, buffer.position(), buffer.remaining());
+                throw KeyStoreError.read(new DataInputStream(in));
+            }
+            int count = buffer.getInt();
+            var chains = new ArrayList<List<X509Certificate>>(Math.min(count, 4));
+            for (int i = 0; i < count; i++) {
+                int size = buffer.getInt();
+                var chain = new ArrayList<X509Certificate>(Math.min(size, 8));
+                for (int j = 0; j < size; j++) {
+                    int length = buffer.getInt();
+                    if (length < 0 || length > buffer.remaining()) {
+                        throw new CertificateException("Truncated attestation response");
+                    }
+                    var in = new ByteArrayInputStream(data, buffer.position(), length);
+                    chain.add((X509Certificate) factory.generateCertificate(in));
+                    buffer.position(buffer.position() + length);
+                }
+                chains.add(chain);
+            }
+            return chains;
+        } catch (BufferUnderflowException e) {
+            throw new CertificateException("Truncated attestation response");
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package io.github.vvb2060.keyattestation.keystore;
+
+import android.os.Build;
+import android.security.KeyStoreException_rename;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.ProviderException;
+import java.util.ArrayList;
+
+/**
+ * A keystore failure carried across the binder as plain fields.
+ * <p>
+ * Each exception of the cause chain is written as its class name and message, whether it is a
+ * {@link ProviderException}, and the public numeric error code, the transient flag and the
+ * internal keystore or KeyMint error code of an {@link android.security.KeyStoreException}.
+ * The client maps these without deserializing framework classes, which may be hidden or
+ * missing on its side.
+ */
+public final class KeyStoreError extends Exception {
+    public static final int NO_ERROR_CODE = 0;
+    private static final String KEYSTORE_EXCEPTION = "android.security.KeyStoreException";
+    private static final int MAX_CAUSES = 8;
+    private static final int MAX_MESSAGE_LENGTH = 4096;
+
+    private final String className;
+    private final int numericErrorCode;
+    private final int errorCode;
+    private final boolean transientFailure;
+    private final boolean providerException;
+
+    private KeyStoreError(String className, String message, int numericErrorCode,
+                          int errorCode, boolean transientFailure, boolean providerException,
+                          KeyStoreError cause) {
+        super(message, cause, false, false);
+        this.className = className;
+        this.numericErrorCode = numericErrorCode;
+        this.errorCode = errorCode;
+        this.transientFailure = transientFailure;
+        this.providerException = providerException;
+    }
+
+    /**
+     * @return the hidden {@code getErrorCode()} of a keystore exception, or {@code fallback} if
+     * the platform does not let the app call it
+     */
+    private static int getErrorCode(Throwable t, int fallback) {
+        try {
+            return ((KeyStoreException_rename) (Object) t).getErrorCode();
+        } catch (LinkageError e) {
+            return fallback;
+        }
+    }
+
+    static void write(DataOutputStream out, Throwable throwable) throws IOException {
+        var chain = new ArrayList<Throwable>(2);
+        for (var t = throwable; t != null && chain.size() < MAX_CAUSES; t = t.getCause()) {
+            if (chain.contains(t)) break;
+            chain.add(t);
+        }
+        out.writeByte(chain.size());
+        for (var t : chain) {
+            int numericErrorCode = NO_ERROR_CODE;
+            int errorCode = NO_ERROR_CODE;
+            boolean transientFailure = false;
+            // the class is public since T, older releases only have the hidden error code
+            if (t.getClass().getName().equals(KEYSTORE_EXCEPTION)) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                    var e = (android.security.KeyStoreException) t;
+                    numericErrorCode = e.getNumericErrorCode();
+                    transientFailure = e.isTransientFailure();
+                }
+                errorCode = getErrorCode(t, numericErrorCode);
+            }
+            var message = t.getMessage();
+            if (message != null && message.length() > MAX_MESSAGE_LENGTH) {
+                message = message.substring(0, MAX_MESSAGE_LENGTH);
+            }
+            out.writeUTF(t.getClass().getName());
+            out.writeBoolean(message != null);
+            if (message != null) {
+                out.writeUTF(message);
+            }
+            out.writeInt(numericErrorCode);
+            out.writeInt(errorCode);
+            out.writeBoolean(transientFailure);
+            out.writeBoolean(t instanceof ProviderException);
+        }
+    }
+
+    static KeyStoreError read(DataInputStream in) throws IOException {
+        int count = in.readUnsignedByte();
+        var classNames = new String[count];
+        var messages = new String[count];
+        var codes = new int[count * 2];
+        var transients = new boolean[count];
+        var providers = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            classNames[i] = in.readUTF();
+            messages[i] = in.readBoolean() ? in.readUTF() : null;
+            codes[i * 2] = in.readInt();
+            codes[i * 2 + 1] = in.readInt();
+            transients[i] = in.readBoolean();
+            providers[i] = in.readBoolean();
+        }
+        KeyStoreError error = null;
+        for (int i = count - 1; i >= 0; i--) {
+            error = new KeyStoreError(classNames[i], messages[i],
+                    codes[i * 2], codes[i * 2 + 1], transients[i], providers[i], error);
+        }
+        if (error == null) {
+            throw new IOException("Empty keystore error");
+        }
+        return error;
+    }
+
+    /**
+     * @return the name of the class of the exception thrown by the keystore
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return {@link android.security.KeyStoreException#getNumericErrorCode()}, or
+     * {@link #NO_ERROR_CODE} if this is not a keystore exception or the API is unavailable
+     */
+    public int getNumericErrorCode() {
+        return numericErrorCode;
+    }
+
+    /**
+     * @return the keystore response code if positive, the KeyMint error code if negative,
+     * {@link #getNumericErrorCode()} if the platform blocks the hidden getter, or
+     * {@link #NO_ERROR_CODE}
+     */
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    public boolean isTransientFailure() {
+        return transientFailure;
+    }
+
+    /**
+     * @return whether the exception is a {@link ProviderException} or one of its subclasses
+     */
+    public boolean isProviderException() {
+        return providerException;
+    }
+
+    @Override
+    public synchronized KeyStoreError getCause() {
+        return (KeyStoreError) super.getCause();
+    }
+
+    /**
+     * @return this error or the first of its causes thrown as the given class, or null
+     */
+    public KeyStoreError find(String className) {
+        for (var e = this; e != null; e = e.getCause()) {
+            if (e.className.equals(className)) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        var message = getLocalizedMessage();
+        return message != null ? className + ": " + message : className;
+    }
+}
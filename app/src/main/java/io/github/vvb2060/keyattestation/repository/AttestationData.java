@@ -3,11 +3,16 @@ package io.github.vvb2060.keyattestation.repository;
 import static io.github.vvb2060.keyattestation.attestation.Attestation.KM_SECURITY_LEVEL_SOFTWARE;
 import static io.github.vvb2060.keyattestation.lang.AttestationException.CODE_CANT_PARSE_CERT;
 
+import android.util.Log;
+
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
+import io.github.vvb2060.keyattestation.AppApplication;
 import io.github.vvb2060.keyattestation.attestation.Attestation;
 import io.github.vvb2060.keyattestation.attestation.CertificateInfo;
 import io.github.vvb2060.keyattestation.attestation.RootOfTrust;
@@ -40,68 +45,62 @@ public class AttestationData extends BaseData {
         }
     }
 
-    private static List<X509Certificate> sortCerts(List<X509Certificate> certs) {
-        if (certs.size() < 2) {
-            return certs;
-        }
+    private static AttestationData parse(List<X509Certificate> chain) {
+        var infoList = new ArrayList<CertificateInfo>(chain.size());
+        CertificateInfo.parse(chain, infoList);
+        return new AttestationData(infoList);
+    }
 
-        var issuer = certs.get(0).getIssuerX500Principal();
-        boolean okay = true;
-        for (var cert : certs) {
-            var subject = cert.getSubjectX500Principal();
-            if (issuer.equals(subject)) {
-                issuer = subject;
-            } else {
-                okay = false;
-                break;
-            }
-        }
-        if (okay) {
-            return certs;
-        }
+    static AttestationData parseCertificateChain(List<X509Certificate> certs) {
+        return parse(CertificateChains.sort(certs));
+    }
 
-        var newList = new ArrayList<X509Certificate>(certs.size());
-        for (var cert : certs) {
-            boolean found = false;
-            var subject = cert.getSubjectX500Principal();
-            for (var c : certs) {
-                if (c == cert) continue;
-                if (c.getIssuerX500Principal().equals(subject)) {
-                    found = true;
-                    break;
-                }
-            }
-            if (!found) {
-                newList.add(cert);
-            }
-        }
-        if (newList.size() != 1) {
-            return certs;
+    private static CompletableFuture<AttestationData> parse(List<X509Certificate> chain,
+                                                            Executor executor) {
+        return CertificateInfo.parse(chain, executor).thenApply(AttestationData::new);
+    }
+
+    /**
+     * Same as {@link #parseCertificateChain(List)}, but the certificates are verified and
+     * parsed concurrently on {@code executor}.
+     */
+    static AttestationData parseCertificateChain(List<X509Certificate> certs, Executor executor) {
+        try {
+            return parse(CertificateChains.sort(certs), executor).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
         }
+    }
 
-        var oldList = new LinkedList<>(certs);
-        oldList.remove(newList.get(0));
-        for (int i = 0; i < newList.size(); i++) {
-            issuer = newList.get(i).getIssuerX500Principal();
-            for (var it = oldList.iterator(); it.hasNext(); ) {
-                var cert = it.next();
-                if (cert.getSubjectX500Principal().equals(issuer)) {
-                    newList.add(cert);
-                    it.remove();
-                    break;
-                }
+    /**
+     * Splits a bag of certificates into one chain per leaf and verifies the certificates of all
+     * chains concurrently on {@code executor}. Chains that fail to parse are logged and left out.
+     *
+     * @return the chains in the input order of their leaves
+     * @throws AttestationException the error of the first chain, if no chain could be parsed
+     */
+    static List<AttestationData> parseCertificateChains(List<X509Certificate> certs,
+                                                        Executor executor) {
+        var chains = CertificateChains.split(certs);
+        var futures = new ArrayList<CompletableFuture<AttestationData>>(chains.size());
+        for (var chain : chains) {
+            futures.add(parse(chain, executor));
+        }
+        var result = new ArrayList<AttestationData>(futures.size());
+        RuntimeException error = null;
+        for (var future : futures) {
+            try {
+                result.add(future.join());
+            } catch (CompletionException e) {
+                var cause = e.getCause() instanceof RuntimeException r ? r : e;
+                Log.w(AppApplication.TAG, "Skipping certificate chain.", cause);
+                if (error == null) error = cause;
             }
         }
-        if (!oldList.isEmpty()) {
-            return certs;
+        if (result.isEmpty() && error != null) {
+            throw error;
         }
-        return newList;
+        return result;
     }
-
-    static AttestationData parseCertificateChain(List<X509Certificate> certs) {
-        var infoList = new ArrayList<CertificateInfo>(certs.size());
-        CertificateInfo.parse(sortCerts(certs), infoList);
-        return new AttestationData(infoList);
-    }
-
 }
@@ -0,0 +1,33 @@
+package io.github.vvb2060.keyattestation.repository;
+
+import java.util.ArrayList;
+
+import io.github.vvb2060.keyattestation.attestation.CertificateInfo;
+import io.github.vvb2060.keyattestation.util.Resource;
+
+/**
+ * Results of attesting with the TEE and with StrongBox at the same time, for comparing the
+ * two side by side. Each side succeeds or fails on its own, the certificates are those of both
+ * sides, TEE first.
+ */
+public class AttestationPair extends BaseData {
+    private final Resource<AttestationData> tee;
+    private final Resource<AttestationData> strongBox;
+
+    AttestationPair(Resource<AttestationData> tee, Resource<AttestationData> strongBox) {
+        this.tee = tee;
+        this.strongBox = strongBox;
+        var certs = new ArrayList<CertificateInfo>();
+        if (tee.getData() != null) certs.addAll(tee.getData().getCerts());
+        if (strongBox.getData() != null) certs.addAll(strongBox.getData().getCerts());
+        init(certs);
+    }
+
+    public Resource<AttestationData> getTee() {
+        return tee;
+    }
+
+    public Resource<AttestationData> getStrongBox() {
+        return strongBox;
+    }
+}
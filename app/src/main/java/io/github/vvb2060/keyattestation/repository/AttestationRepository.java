@@ -10,41 +10,66 @@ import android.hardware.security.keymint.DeviceInfo;
 import android.os.Build;
 import android.os.ParcelFileDescriptor;
 import android.os.RemoteException;
-import android.security.KeyStoreException;
-import android.security.keystore.DeviceIdAttestationException;
-import android.security.keystore.StrongBoxUnavailableException;
 import android.util.Log;
 
-import androidx.annotation.RequiresApi;
-
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
 import java.io.OutputStream;
-import java.security.ProviderException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import io.github.vvb2060.keyattestation.AppApplication;
+import io.github.vvb2060.keyattestation.attestation.TrustData;
 import io.github.vvb2060.keyattestation.keystore.AndroidKeyStore;
+import io.github.vvb2060.keyattestation.keystore.AttestationRequest;
+import io.github.vvb2060.keyattestation.keystore.AttestationResponse;
 import io.github.vvb2060.keyattestation.keystore.IAndroidKeyStore;
+import io.github.vvb2060.keyattestation.keystore.KeyStoreError;
 import io.github.vvb2060.keyattestation.keystore.KeyStoreManager;
 import io.github.vvb2060.keyattestation.lang.AttestationException;
 import io.github.vvb2060.keyattestation.util.Resource;
 
 public class AttestationRepository {
+    private static final String STRONGBOX_UNAVAILABLE =
+            "android.security.keystore.StrongBoxUnavailableException";
+    private static final String KEYSTORE_EXCEPTION = "android.security.KeyStoreException";
+    private static final String DEVICE_ID_ATTESTATION_EXCEPTION =
+            "android.security.keystore.DeviceIdAttestationException";
+    // KeyMint ErrorCode.CANNOT_ATTEST_IDS
+    private static final int KM_ERROR_CANNOT_ATTEST_IDS = -66;
+    // KeyMint ErrorCode.ATTESTATION_KEYS_NOT_PROVISIONED
+    private static final int KM_ERROR_ATTESTATION_KEYS_NOT_PROVISIONED = -74;
+
     private final AndroidKeyStore localKeyStore;
-    private final CertificateFactory factory;
-    private final List<X509Certificate> currentCerts;
-    private IAndroidKeyStore keyStore;
+    // a CertificateFactory is not thread safe, and the lanes of the scheduler and attestBoth
+    // use the repository at the same time
+    private final ThreadLocal<CertificateFactory> factory = ThreadLocal.withInitial(() -> {
+        try {
+            return CertificateFactory.getInstance("X.509");
+        } catch (CertificateException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    // verifies and parses the certificates of a chain concurrently
+    private final Executor parser = ForkJoinPool.commonPool();
+    // the same for every attestation of this process, so that attest keys generated ahead of use
+    // carry it too
+    private final byte[] challenge = new Date().toString().getBytes();
+    private volatile IAndroidKeyStore keyStore;
+    // certificates of the latest operation, which operations on other threads may overlap
+    private List<X509Certificate> currentCerts = Collections.emptyList();
+    private long generation;
 
     public AttestationRepository() throws Exception {
         localKeyStore = new AndroidKeyStore();
-        factory = CertificateFactory.getInstance("X.509");
-        currentCerts = new ArrayList<>();
         keyStore = localKeyStore;
     }
 
@@ -56,185 +81,256 @@ public class AttestationRepository {
         }
     }
 
-    public boolean hasCertificates() {
+    public synchronized boolean hasCertificates() {
         return !currentCerts.isEmpty();
     }
 
-    @SuppressWarnings("unchecked")
-    private void generateCertificates(InputStream in) throws CertificateException {
-        var list = (List<X509Certificate>) factory.generateCertificates(in);
-        if (list.isEmpty()) {
-            throw new CertificateException("No certificate");
+    /**
+     * Starts an operation, clearing the certificates of the previous ones.
+     *
+     * @return the ticket to publish the certificates of this operation with
+     */
+    private synchronized long begin() {
+        currentCerts = Collections.emptyList();
+        return ++generation;
+    }
+
+    /**
+     * Keeps the certificates for {@link #saveCerts}, unless a later operation has started.
+     */
+    private synchronized void publish(long ticket, List<X509Certificate> certs) {
+        if (ticket == generation) {
+            currentCerts = certs;
         }
-        currentCerts.addAll(list);
     }
 
     @SuppressWarnings("unchecked")
-    private void generateCertPath(InputStream in) throws CertificateException {
-        var list = (List<X509Certificate>) factory.generateCertPath(in).getCertificates();
+    private List<X509Certificate> generateCertificates(InputStream in)
+            throws CertificateException {
+        var list = (List<X509Certificate>) factory.get().generateCertificates(in);
         if (list.isEmpty()) {
             throw new CertificateException("No certificate");
         }
-        currentCerts.addAll(list);
+        return list;
     }
 
-    private void generateKeyPair(String alias, String attestKeyAlias,
-                                 boolean useStrongBox, boolean includeProps,
-                                 boolean uniqueIdIncluded, int idFlags,
-                                 boolean useSak) throws Exception {
-        var data = keyStore.generateKeyPair(alias, attestKeyAlias, useStrongBox,
-                includeProps, uniqueIdIncluded, idFlags, useSak);
-        if (data != null) {
-            try (var it = new ObjectInputStream((new ByteArrayInputStream(data)))) {
-                throw (Exception) it.readObject();
-            }
+    @SuppressWarnings("unchecked")
+    private List<X509Certificate> generateCertPath(InputStream in) throws CertificateException {
+        var list = (List<X509Certificate>) factory.get().generateCertPath(in).getCertificates();
+        if (list.isEmpty()) {
+            throw new CertificateException("No certificate");
         }
+        return list;
     }
 
-    private void attestDeviceIds(int idFlags) throws Exception {
+    private List<X509Certificate> attestDeviceIds(int idFlags) throws Exception {
         var data = keyStore.attestDeviceIds(idFlags);
-        var in = new ByteArrayInputStream(data);
-        if (in.read() == 1) {
-            generateCertificates(in);
-        } else {
-            try (var it = new ObjectInputStream((in))) {
-                var exception = (Exception) it.readObject();
-                throw new ProviderException(exception);
-            }
+        var certs = new ArrayList<X509Certificate>();
+        for (var chain : AttestationResponse.read(data, factory.get())) {
+            certs.addAll(chain);
         }
+        return certs;
     }
 
     @SuppressLint("SwitchIntDef")
-    @RequiresApi(Build.VERSION_CODES.TIRAMISU)
-    private static AttestationException toAttestationException(KeyStoreException exception,
+    private static AttestationException toAttestationException(KeyStoreError keyStoreException,
                                                                Exception e) {
-        int code = exception.getNumericErrorCode();
+        int code = keyStoreException.getNumericErrorCode();
         if (code == ERROR_ID_ATTESTATION_FAILURE) {
             return new AttestationException(CODE_DEVICEIDS_UNAVAILABLE, e);
         }
         if (code >= ERROR_ATTESTATION_KEYS_UNAVAILABLE) {
-            if (exception.isTransientFailure()) {
+            if (keyStoreException.isTransientFailure()) {
                 return new AttestationException(CODE_OUT_OF_KEYS_TRANSIENT, e);
             } else {
                 return new AttestationException(CODE_OUT_OF_KEYS, e);
             }
         }
         if (code == ERROR_KEYMINT_FAILURE) {
-            if (exception.toString().contains("ATTESTATION_KEYS_NOT_PROVISIONED")) {
+            if (keyStoreException.getErrorCode() == KM_ERROR_ATTESTATION_KEYS_NOT_PROVISIONED) {
                 return new AttestationException(CODE_KEYS_NOT_PROVISIONED, e);
             }
         }
-        if (exception.isTransientFailure()) {
+        if (keyStoreException.isTransientFailure()) {
             return new AttestationException(CODE_UNAVAILABLE_TRANSIENT, e);
         } else {
             return new AttestationException(CODE_UNAVAILABLE, e);
         }
     }
 
-    private void getCertChain(String alias) throws RemoteException, CertificateException {
-        var certChain = keyStore.getCertificateChain(alias);
-        if (certChain == null) {
-            throw new ProviderException("Unable to get certificate chain");
+    private static AttestationException toAttestationException(KeyStoreError e) {
+        var keyStoreException = e.find(KEYSTORE_EXCEPTION);
+        if (e.getClassName().equals(STRONGBOX_UNAVAILABLE)) {
+            return new AttestationException(CODE_STRONGBOX_UNAVAILABLE, e);
+        } else if (keyStoreException != null
+                && keyStoreException.getNumericErrorCode() != KeyStoreError.NO_ERROR_CODE) {
+            return toAttestationException(keyStoreException, e);
+        } else if (e.find(DEVICE_ID_ATTESTATION_EXCEPTION) != null) {
+            return new AttestationException(CODE_DEVICEIDS_UNAVAILABLE, e);
+        } else if (keyStoreException != null
+                && keyStoreException.getErrorCode() == KM_ERROR_CANNOT_ATTEST_IDS) {
+            return new AttestationException(CODE_DEVICEIDS_UNAVAILABLE, e);
+        } else if (e.isProviderException()) {
+            return new AttestationException(CODE_UNAVAILABLE, e);
+        } else {
+            return new AttestationException(CODE_UNKNOWN, e);
         }
-        generateCertificates(new ByteArrayInputStream(certChain));
     }
 
-    private void doAttestation(boolean useAttestKey, boolean useStrongBox,
-                               boolean includeProps, boolean uniqueIdIncluded,
-                               int idFlags, boolean useSak) throws AttestationException {
+    private List<X509Certificate> doAttestation(boolean reset, boolean useAttestKey,
+                                                boolean useStrongBox, boolean includeProps,
+                                                boolean uniqueIdIncluded, int idFlags,
+                                                boolean useSak) throws AttestationException {
         var alias = useStrongBox ? AppApplication.TAG + "_strongbox" : AppApplication.TAG;
-        var attestKeyAlias = useAttestKey ? alias + "_persistent" : null;
         try {
             if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S && idFlags != 0) {
-                attestDeviceIds(idFlags);
-                return;
+                if (reset) keyStore.deleteAllEntry();
+                return attestDeviceIds(idFlags);
             }
 
-            if (useAttestKey && !keyStore.containsAlias(attestKeyAlias)) {
-                generateKeyPair(attestKeyAlias, attestKeyAlias, useStrongBox,
-                        includeProps, uniqueIdIncluded, idFlags, false);
-            }
-            generateKeyPair(alias, attestKeyAlias, useStrongBox,
-                    includeProps, uniqueIdIncluded, idFlags, useSak);
-
-            getCertChain(alias);
-            if (useAttestKey) {
-                getCertChain(attestKeyAlias);
-            }
-        } catch (ProviderException e) {
-            var cause = e.getCause();
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
-                    && e instanceof StrongBoxUnavailableException) {
-                throw new AttestationException(CODE_STRONGBOX_UNAVAILABLE, e);
-            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
-                    && cause instanceof KeyStoreException keyStoreException) {
-                throw toAttestationException(keyStoreException, e);
-            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
-                    && cause instanceof DeviceIdAttestationException) {
-                throw new AttestationException(CODE_DEVICEIDS_UNAVAILABLE, e);
-            } else if (cause != null && cause.toString().contains("device ids")) {
-                throw new AttestationException(CODE_DEVICEIDS_UNAVAILABLE, e);
-            } else {
-                throw new AttestationException(CODE_UNAVAILABLE, e);
+            var request = new AttestationRequest();
+            request.reset = reset;
+            request.alias = alias;
+            request.attestKeyAlias = useAttestKey ? alias + "_persistent" : null;
+            request.useStrongBox = useStrongBox;
+            request.includeProps = includeProps;
+            request.uniqueIdIncluded = uniqueIdIncluded;
+            request.idFlags = idFlags;
+            request.challenge = challenge;
+            request.useSak = useSak;
+            var certs = new ArrayList<X509Certificate>();
+            for (var chain : AttestationResponse.read(keyStore.attest(request), factory.get())) {
+                certs.addAll(chain);
             }
+            return certs;
+        } catch (KeyStoreError e) {
+            throw toAttestationException(e);
         } catch (Exception e) {
             throw new AttestationException(CODE_UNKNOWN, e);
         }
     }
 
+    private static Resource<AttestationData> attestError(Exception e) {
+        var cause = e instanceof AttestationException ? e.getCause() : e;
+        Log.w(AppApplication.TAG, "Do attestation error.", cause);
+
+        if (e instanceof AttestationException) {
+            return Resource.Companion.error(e, null);
+        } else {
+            return Resource.Companion.error(new AttestationException(CODE_UNKNOWN, e), null);
+        }
+    }
+
+    private Resource<AttestationData> attest(boolean reset, boolean useAttestKey,
+                                             boolean useStrongBox, boolean includeProps,
+                                             boolean uniqueIdIncluded, int idFlags,
+                                             boolean useSak, List<X509Certificate> certs) {
+        try {
+            certs.addAll(doAttestation(reset, useAttestKey, useStrongBox, includeProps,
+                    uniqueIdIncluded, idFlags, useSak));
+            return Resource.Companion.success(AttestationData.parseCertificateChain(certs, parser));
+        } catch (Exception e) {
+            return attestError(e);
+        }
+    }
+
     public Resource<AttestationData> attest(boolean reset, boolean useAttestKey,
                                             boolean useStrongBox, boolean includeProps,
                                             boolean uniqueIdIncluded, int idFlags, boolean useSak) {
-        currentCerts.clear();
-        try {
-            if (reset) keyStore.deleteAllEntry();
-            doAttestation(useAttestKey, useStrongBox, includeProps,
-                    uniqueIdIncluded, idFlags, useSak);
-            return Resource.Companion.success(AttestationData.parseCertificateChain(currentCerts));
-        } catch (Exception e) {
-            var cause = e instanceof AttestationException ? e.getCause() : e;
-            Log.w(AppApplication.TAG, "Do attestation error.", cause);
+        long ticket = begin();
+        // load trust data while the keystore generates keys, retrying a previous failure
+        if (!TrustData.isReady()) TrustData.warmUp();
+        var certs = new ArrayList<X509Certificate>();
+        var result = attest(reset, useAttestKey, useStrongBox, includeProps,
+                uniqueIdIncluded, idFlags, useSak, certs);
+        publish(ticket, certs);
+        return result;
+    }
 
-            if (e instanceof AttestationException) {
-                return Resource.Companion.error(e, null);
-            } else {
-                return Resource.Companion.error(new AttestationException(CODE_UNKNOWN, e), null);
+    /**
+     * Attests with the TEE on the calling thread and with StrongBox on {@code executor} at the
+     * same time, so this takes about as long as the slower of the two. The certificates of both
+     * are kept for {@link #saveCerts}.
+     *
+     * @param executor runs the StrongBox attestation, must not wait for the calling thread
+     * @param useSak   only applies to the TEE, StrongBox keys cannot be attested by SAK
+     */
+    public AttestationPair attestBoth(boolean reset, boolean useAttestKey, boolean includeProps,
+                                      boolean uniqueIdIncluded, int idFlags, boolean useSak,
+                                      Executor executor) {
+        long ticket = begin();
+        if (!TrustData.isReady()) TrustData.warmUp();
+        if (reset) {
+            // once for both, a reset by either side would delete the keys of the other
+            try {
+                keyStore.deleteAllEntry();
+            } catch (Exception e) {
+                var error = attestError(new AttestationException(CODE_UNKNOWN, e));
+                return new AttestationPair(error, error);
             }
         }
+        var strongBoxCerts = new ArrayList<X509Certificate>();
+        var strongBox = CompletableFuture.supplyAsync(() -> attest(false, useAttestKey, true,
+                includeProps, uniqueIdIncluded, idFlags, false, strongBoxCerts), executor);
+        var certs = new ArrayList<X509Certificate>();
+        var tee = attest(false, useAttestKey, false, includeProps,
+                uniqueIdIncluded, idFlags, useSak, certs);
+        var pair = new AttestationPair(tee, strongBox.join());
+        certs.addAll(strongBoxCerts);
+        publish(ticket, certs);
+        return pair;
     }
 
-    public Resource<AttestationData> loadCerts(ParcelFileDescriptor pfd) {
-        currentCerts.clear();
-        try {
-            AttestationData data;
-            try (var in = new ParcelFileDescriptor.AutoCloseInputStream(pfd);
-                 var channel = in.getChannel()) {
-                try {
-                    generateCertificates(in);
-                    data = AttestationData.parseCertificateChain(currentCerts);
-                } catch (CertificateException e) {
-                    channel.position(0);
-                    generateCertPath(in);
-                    data = AttestationData.parseCertificateChain(currentCerts);
-                }
+    private List<X509Certificate> readCerts(ParcelFileDescriptor pfd) throws Exception {
+        try (var in = new ParcelFileDescriptor.AutoCloseInputStream(pfd);
+             var channel = in.getChannel()) {
+            try {
+                return generateCertificates(in);
+            } catch (CertificateException e) {
+                channel.position(0);
+                return generateCertPath(in);
             }
-            return Resource.Companion.success(data);
-        } catch (Exception e) {
-            var cause = e instanceof AttestationException ? e.getCause() : e;
-            Log.w(AppApplication.TAG, "Load attestation error.", cause);
+        }
+    }
 
-            if (e instanceof AttestationException) {
-                return Resource.Companion.error(e, null);
-            } else if (e instanceof CertificateException) {
-                return Resource.Companion.error(new AttestationException(CODE_CANT_PARSE_CERT, e), null);
-            } else {
-                return Resource.Companion.error(new AttestationException(CODE_UNKNOWN, e), null);
-            }
+    private static <T> Resource<T> loadError(Exception e) {
+        var cause = e instanceof AttestationException ? e.getCause() : e;
+        Log.w(AppApplication.TAG, "Load attestation error.", cause);
+
+        if (e instanceof AttestationException) {
+            return Resource.Companion.error(e, null);
+        } else if (e instanceof CertificateException) {
+            return Resource.Companion.error(new AttestationException(CODE_CANT_PARSE_CERT, e), null);
+        } else {
+            return Resource.Companion.error(new AttestationException(CODE_UNKNOWN, e), null);
+        }
+    }
+
+    /**
+     * Loads a file that may hold many chains, such as a bundle exported from a server, and
+     * verifies every chain it contains concurrently.
+     *
+     * @return the chains in the order of the file, all certificates are kept for
+     * {@link #saveCerts}
+     */
+    public Resource<List<AttestationData>> loadCertChains(ParcelFileDescriptor pfd) {
+        long ticket = begin();
+        try {
+            var certs = readCerts(pfd);
+            publish(ticket, certs);
+            return Resource.Companion.success(
+                    AttestationData.parseCertificateChains(certs, parser));
+        } catch (Exception e) {
+            return loadError(e);
         }
     }
 
     public void saveCerts(OutputStream out) throws Exception {
-        var certPath = factory.generateCertPath(currentCerts);
+        List<X509Certificate> certs;
+        synchronized (this) {
+            certs = currentCerts;
+        }
+        var certPath = factory.get().generateCertPath(certs);
         out.write(certPath.getEncoded("PKCS7"));
     }
 
@@ -256,7 +352,7 @@ public class AttestationRepository {
     }
 
     public Resource<RemoteProvisioningData> checkRkp(boolean useStrongBox) {
-        currentCerts.clear();
+        begin();
         try {
             var name = Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE
                     ? keyStore.getRkpHostname() : null;
@@ -265,7 +361,7 @@ public class AttestationRepository {
             var info = new RemoteProvisioningData(name, hw, deviceInfo);
             try {
                 var data = keyStore.checkRemoteProvisioning(useStrongBox);
-                info.setCerts(factory.generateCertificates(new ByteArrayInputStream(data)));
+                info.setCerts(factory.get().generateCertificates(new ByteArrayInputStream(data)));
             } catch (IllegalStateException e) {
                 info.setError(e);
             }
@@ -0,0 +1,360 @@
+package io.github.vvb2060.keyattestation.repository;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import io.github.vvb2060.keyattestation.AppApplication;
+import io.github.vvb2060.keyattestation.attestation.RootPublicKey;
+import io.github.vvb2060.keyattestation.attestation.TrustBundle;
+import io.github.vvb2060.keyattestation.attestation.TrustData;
+import io.github.vvb2060.keyattestation.attestation.VerificationCache;
+
+/**
+ * Verifies many attestation chains without touching the UI state of
+ * {@link AttestationRepository}.
+ * <p>
+ * Input is read on the calling thread and split into chains: a PKCS#7 structure is one
+ * chain, and consecutive certificates form one chain as long as each is the issuer of the one
+ * before it, ending at a self-signed certificate.
+ * Chains are verified on the executor, and results are delivered to the sink on the calling
+ * thread in input order, so the sink needs no synchronization.
+ * <p>
+ * Nothing here depends on a running app: the trust data can be loaded from files with
+ * {@link TrustData#load}, and {@link #main} verifies chains from the command line.
+ */
+public class BatchVerifier {
+    private static final String PEM_END = "-----END ";
+
+    private final ExecutorService executor;
+    private final int window;
+    private final LongSupplier clock;
+    private final Consumer<String> logger;
+
+    /**
+     * @param parallelism number of chains verified at the same time, bounds memory use
+     */
+    public BatchVerifier(ExecutorService executor, int parallelism) {
+        this(executor, parallelism, SystemClock::elapsedRealtime,
+                message -> Log.i(AppApplication.TAG, message));
+    }
+
+    /**
+     * @param clock  milliseconds of a monotonic clock, for the throughput of a batch
+     * @param logger receives the summary of every batch
+     */
+    public BatchVerifier(ExecutorService executor, int parallelism, LongSupplier clock,
+                         Consumer<String> logger) {
+        this.executor = executor;
+        this.window = Math.max(1, parallelism) * 4;
+        this.clock = clock;
+        this.logger = logger;
+    }
+
+    /**
+     * @param source file the chain was read from
+     * @param index  position of the chain in that file
+     * @param status root status of the chain, {@link RootPublicKey.Status#NULL} on error
+     * @param data   the verified chain, or null on error
+     */
+    public record Result(String source, int index, RootPublicKey.Status status,
+                         AttestationData data, Throwable error) {
+    }
+
+    public record Summary(int chains, int failed, long elapsedMillis) {
+        public double chainsPerSecond() {
+            return elapsedMillis == 0 ? 0 : chains * 1000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return chains + " chains, " + failed + " failed, " + elapsedMillis + "ms, " +
+                    String.format("%.1f", chainsPerSecond()) + " chains/s";
+        }
+    }
+
+    private class Session {
+        private final CertificateFactory factory;
+        private final Consumer<Result> sink;
+        private final ArrayDeque<CompletableFuture<Result>> pending = new ArrayDeque<>();
+        private final long start = clock.getAsLong();
+        private int chains;
+        private int failed;
+
+        Session(Consumer<Result> sink) throws CertificateException {
+            this.factory = CertificateFactory.getInstance("X.509");
+            this.sink = sink;
+        }
+
+        void submit(String source, int index, List<X509Certificate> chain) {
+            add(CompletableFuture.supplyAsync(() -> verify(source, index, chain), executor));
+        }
+
+        void error(String source, int index, Throwable error) {
+            add(CompletableFuture.completedFuture(
+                    new Result(source, index, RootPublicKey.Status.NULL, null, error)));
+        }
+
+        private void add(CompletableFuture<Result> future) {
+            pending.add(future);
+            while (pending.size() >= window) {
+                emit(pending.remove());
+            }
+        }
+
+        private void emit(CompletableFuture<Result> future) {
+            var result = future.join();
+            chains++;
+            if (result.error != null) failed++;
+            sink.accept(result);
+        }
+
+        Summary finish() {
+            while (!pending.isEmpty()) {
+                emit(pending.remove());
+            }
+            var summary = new Summary(chains, failed, clock.getAsLong() - start);
+            logger.accept("Batch verification: " + summary +
+                    ", signature cache " + VerificationCache.stats());
+            return summary;
+        }
+    }
+
+    private static Result verify(String source, int index, List<X509Certificate> chain) {
+        try {
+            var data = AttestationData.parseCertificateChain(chain);
+            return new Result(source, index, data.getStatus(), data, null);
+        } catch (Exception e) {
+            return new Result(source, index, RootPublicKey.Status.NULL, null, e);
+        }
+    }
+
+    /**
+     * Verifies every chain of a file, or of every file in a directory.
+     */
+    public Summary verify(File file, Consumer<Result> sink) throws IOException {
+        var session = newSession(sink);
+        File[] files;
+        if (file.isDirectory()) {
+            files = file.listFiles(File::isFile);
+            if (files == null) {
+                throw new IOException("Failed to list " + file);
+            }
+            Arrays.sort(files);
+        } else {
+            files = new File[]{file};
+        }
+        for (var f : files) {
+            try (var in = new FileInputStream(f)) {
+                read(session, in, f.getPath());
+            }
+        }
+        return session.finish();
+    }
+
+    /**
+     * Verifies every chain of a stream of concatenated PEM, DER or PKCS#7 objects.
+     */
+    public Summary verify(InputStream in, String source, Consumer<Result> sink)
+            throws IOException {
+        var session = newSession(sink);
+        read(session, in, source);
+        return session.finish();
+    }
+
+    private Session newSession(Consumer<Result> sink) throws IOException {
+        try {
+            return new Session(sink);
+        } catch (CertificateException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static boolean isIssuer(X509Certificate issuer, X509Certificate cert) {
+        return issuer.getSubjectX500Principal().equals(cert.getIssuerX500Principal());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void read(Session session, InputStream input, String source) throws IOException {
+        var in = new BufferedInputStream(input);
+        var chain = new ArrayList<X509Certificate>();
+        int index = 0;
+        byte[] object;
+        while ((object = readObject(in)) != null) {
+            List<X509Certificate> certs;
+            boolean whole;
+            try {
+                certs = (List<X509Certificate>) session.factory.generateCertificates(
+                        new ByteArrayInputStream(object));
+                whole = certs.size() > 1;
+            } catch (CertificateException e) {
+                try {
+                    certs = (List<X509Certificate>) session.factory.generateCertPath(
+                            new ByteArrayInputStream(object), "PKCS7").getCertificates();
+                    whole = true;
+                } catch (CertificateException ignored) {
+                    session.error(source, index++, e);
+                    continue;
+                }
+            }
+            if (whole) {
+                if (!chain.isEmpty()) {
+                    session.submit(source, index++, chain);
+                    chain = new ArrayList<>();
+                }
+                session.submit(source, index++, certs);
+                continue;
+            }
+            for (var cert : certs) {
+                // a certificate that did not issue the previous one starts a new chain
+                if (!chain.isEmpty() && !isIssuer(cert, chain.get(chain.size() - 1))) {
+                    session.submit(source, index++, chain);
+                    chain = new ArrayList<>();
+                }
+                chain.add(cert);
+                if (isIssuer(cert, cert)) {
+                    session.submit(source, index++, chain);
+                    chain = new ArrayList<>();
+                }
+            }
+        }
+        if (!chain.isEmpty()) {
+            session.submit(source, index, chain);
+        }
+    }
+
+    /**
+     * @return the next PEM block or DER TLV of the stream, or null at the end
+     */
+    private static byte[] readObject(BufferedInputStream in) throws IOException {
+        int first;
+        do {
+            in.mark(1);
+            first = in.read();
+        } while (first != -1 && Character.isWhitespace(first));
+        if (first == -1) {
+            return null;
+        }
+        in.reset();
+
+        var out = new ByteArrayOutputStream(2048);
+        if (first == '-') {
+            var line = new ByteArrayOutputStream(80);
+            boolean begun = false;
+            for (int c; (c = in.read()) != -1; ) {
+                out.write(c);
+                if (c != '\n') {
+                    line.write(c);
+                    continue;
+                }
+                var s = line.toString(StandardCharsets.US_ASCII.name()).trim();
+                line.reset();
+                if (begun && s.startsWith(PEM_END)) {
+                    return out.toByteArray();
+                }
+                begun = true;
+            }
+            return out.toByteArray();
+        }
+
+        out.write(in.read());
+        int b = in.read();
+        if (b == -1) {
+            throw new IOException("Truncated DER object");
+        }
+        out.write(b);
+        long length = b;
+        if (b >= 0x80) {
+            int count = b & 0x7f;
+            if (count == 0 || count > 4) {
+                throw new IOException("Unsupported DER length");
+            }
+            length = 0;
+            for (int i = 0; i < count; i++) {
+                b = in.read();
+                if (b == -1) {
+                    throw new IOException("Truncated DER object");
+                }
+                out.write(b);
+                length = length << 8 | b;
+            }
+        }
+        var buffer = new byte[8192];
+        while (length > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, length));
+            if (read == -1) {
+                throw new IOException("Truncated DER object");
+            }
+            out.write(buffer, 0, read);
+            length -= read;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Verifies the chains of files and directories from the command line and prints one line
+     * per chain, for example:
+     * <pre>
+     * adb shell CLASSPATH=$(pm path io.github.vvb2060.keyattestation | cut -d: -f2) \
+     *     app_process / io.github.vvb2060.keyattestation.repository.BatchVerifier \
+     *     -s status.json [-b bundle] path...
+     * </pre>
+     * {@code -s} is the revocation status list and {@code -b} a {@link TrustBundle} file or
+     * directory with extra roots. Exits with 1 if a chain failed.
+     */
+    public static void main(String[] args) throws Exception {
+        File status = null;
+        File bundle = null;
+        var paths = new ArrayList<File>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-s" -> status = new File(args[++i]);
+                case "-b" -> bundle = new File(args[++i]);
+                default -> paths.add(new File(args[i]));
+            }
+        }
+        if (status == null || paths.isEmpty()) {
+            System.err.println("usage: BatchVerifier -s status.json [-b bundle] path...");
+            System.exit(2);
+        }
+        try (var in = new FileInputStream(status)) {
+            TrustData.load(in, bundle == null ? null : TrustBundle.load(bundle));
+        }
+
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        var executor = Executors.newFixedThreadPool(parallelism);
+        var verifier = new BatchVerifier(executor, parallelism,
+                () -> System.nanoTime() / 1_000_000, System.err::println);
+        int failed = 0;
+        for (var path : paths) {
+            failed += verifier.verify(path, result -> {
+                var line = result.source() + "#" + result.index() + ": " + result.status();
+                if (result.error() != null) line += " " + result.error();
+                System.out.println(line);
+            }).failed();
+        }
+        executor.shutdown();
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,192 @@
+package io.github.vvb2060.keyattestation.repository;
+
+import android.util.Log;
+
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+
+import java.nio.ByteBuffer;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.x500.X500Principal;
+
+import io.github.vvb2060.keyattestation.AppApplication;
+
+/**
+ * Assembles chains from the leaf to the root out of a bag of certificates, in linear time.
+ * <p>
+ * Certificates are indexed by canonical subject name and by subject key identifier, each
+ * name is canonicalized once. A certificate's issuer is the first certificate in input order
+ * whose subject matches its issuer, preferring one whose subject key identifier matches its
+ * authority key identifier. Certificates whose issuer and subject are equal end a chain.
+ * Duplicates are dropped, so the result only depends on the input order.
+ */
+final class CertificateChains {
+
+    private static final class Node {
+        final X509Certificate cert;
+        final String subject;
+        final String issuer;
+        final ByteBuffer keyId;
+        final ByteBuffer authorityKeyId;
+        Node parent;
+        boolean hasChild;
+        // Chain length up to the root, 0 until computed, -1 while being computed.
+        int depth;
+
+        Node(X509Certificate cert) {
+            this.cert = cert;
+            this.subject = cert.getSubjectX500Principal().getName(X500Principal.CANONICAL);
+            this.issuer = cert.getIssuerX500Principal().getName(X500Principal.CANONICAL);
+            this.keyId = getKeyId(cert, Extension.subjectKeyIdentifier.getId());
+            this.authorityKeyId = getKeyId(cert, Extension.authorityKeyIdentifier.getId());
+        }
+
+        boolean isRoot() {
+            return subject.equals(issuer);
+        }
+    }
+
+    private CertificateChains() {
+    }
+
+    private static ByteBuffer getKeyId(X509Certificate cert, String oid) {
+        var value = cert.getExtensionValue(oid);
+        if (value == null) {
+            return null;
+        }
+        try {
+            var octets = ASN1OctetString.getInstance(value).getOctets();
+            byte[] keyId = oid.equals(Extension.subjectKeyIdentifier.getId())
+                    ? SubjectKeyIdentifier.getInstance(octets).getKeyIdentifier()
+                    : AuthorityKeyIdentifier.getInstance(octets).getKeyIdentifier();
+            return keyId == null ? null : ByteBuffer.wrap(keyId);
+        } catch (IllegalArgumentException e) {
+            Log.w(AppApplication.TAG, "Ignoring malformed key identifier " + oid, e);
+            return null;
+        }
+    }
+
+    private static List<Node> link(List<X509Certificate> certs) {
+        var nodes = new ArrayList<Node>(certs.size());
+        for (var cert : new LinkedHashSet<>(certs)) {
+            nodes.add(new Node(cert));
+        }
+        var bySubject = new HashMap<String, List<Node>>();
+        var byKeyId = new HashMap<ByteBuffer, List<Node>>();
+        for (var node : nodes) {
+            bySubject.computeIfAbsent(node.subject, k -> new ArrayList<>(1)).add(node);
+            if (node.keyId != null) {
+                byKeyId.computeIfAbsent(node.keyId, k -> new ArrayList<>(1)).add(node);
+            }
+        }
+        for (var node : nodes) {
+            if (node.isRoot()) continue;
+            node.parent = findIssuer(node, byKeyId, node.authorityKeyId);
+            if (node.parent == null) {
+                node.parent = findIssuer(node, bySubject, node.issuer);
+            }
+            if (node.parent != null) {
+                node.parent.hasChild = true;
+            }
+        }
+        return nodes;
+    }
+
+    private static <K> Node findIssuer(Node node, Map<K, List<Node>> index, K key) {
+        if (key == null) return null;
+        var candidates = index.get(key);
+        if (candidates == null) return null;
+        for (var candidate : candidates) {
+            if (candidate != node && candidate.subject.equals(node.issuer)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Computes the chain length of a node, memoized, breaking cycles of cross-signed
+     * certificates at the first certificate seen twice.
+     */
+    private static int depth(Node node) {
+        var path = new ArrayList<Node>();
+        var n = node;
+        while (n != null && n.depth == 0) {
+            n.depth = -1;
+            path.add(n);
+            if (n.parent != null && n.parent.depth == -1) {
+                n.parent = null;
+            }
+            n = n.parent;
+        }
+        int depth = n == null ? 0 : n.depth;
+        for (int i = path.size() - 1; i >= 0; i--) {
+            path.get(i).depth = ++depth;
+        }
+        return node.depth;
+    }
+
+    private static List<X509Certificate> walk(Node leaf) {
+        var chain = new ArrayList<X509Certificate>(leaf.depth);
+        for (var n = leaf; n != null; n = n.parent) {
+            chain.add(n.cert);
+        }
+        return chain;
+    }
+
+    /**
+     * @return the longest chain that can be built from the certificates, preferring one that does
+     * not start at a root and then the first one in input order if several are equally long, or
+     * the certificates unchanged if none has a leaf
+     */
+    static List<X509Certificate> sort(List<X509Certificate> certs) {
+        if (certs.size() < 2) {
+            return certs;
+        }
+        Node leaf = null;
+        for (var node : link(certs)) {
+            if (node.hasChild) continue;
+            int depth = depth(node);
+            if (leaf == null || depth > leaf.depth
+                    || depth == leaf.depth && leaf.isRoot() && !node.isRoot()) {
+                leaf = node;
+            }
+        }
+        if (leaf == null) {
+            return certs;
+        }
+        var chain = walk(leaf);
+        if (chain.size() != certs.size()) {
+            Log.w(AppApplication.TAG, "Dropped " + (certs.size() - chain.size())
+                    + " duplicate or unrelated certificates");
+        }
+        return chain;
+    }
+
+    /**
+     * Splits a bag of certificates into one chain per leaf, a certificate that issued none of
+     * the others. Chains share the certificates they have in common.
+     *
+     * @return the chains in the input order of their leaves
+     */
+    static List<List<X509Certificate>> split(List<X509Certificate> certs) {
+        var chains = new ArrayList<List<X509Certificate>>();
+        for (var node : link(certs)) {
+            if (node.hasChild) continue;
+            depth(node);
+            chains.add(walk(node));
+        }
+        if (chains.isEmpty() && !certs.isEmpty()) {
+            chains.add(certs);
+        }
+        return chains;
+    }
+}
@@ -0,0 +1,163 @@
+package io.github.vvb2060.keyattestation.util;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.github.vvb2060.keyattestation.AppApplication;
+import io.github.vvb2060.keyattestation.BuildConfig;
+
+/**
+ * Runs background work in lanes, one thread each, so that slow work of one kind does not
+ * hold up the others.
+ * <p>
+ * Every task is submitted with a key naming what it produces. A new task cancels the pending
+ * or running task with the same key, whatever its lane: a pending task is skipped, a running
+ * one is interrupted and should check {@link Handle#isCancelled()} before publishing anything.
+ * The time tasks wait in the queue and take to run is recorded per lane.
+ */
+public final class TaskScheduler {
+
+    public enum Lane {
+        /** Key generation and other keystore calls. */
+        KEYSTORE,
+        /** Requests to remote servers. */
+        NETWORK,
+        /** Reading and writing user files. */
+        FILE
+    }
+
+    public interface Task {
+        void run(Handle handle) throws Exception;
+    }
+
+    public record Stats(int tasks, int cancelled, long waitMillis, long runMillis) {
+        @Override
+        public String toString() {
+            return tasks + " tasks, " + cancelled + " cancelled, " +
+                    (tasks == 0 ? 0 : waitMillis / tasks) + "ms wait, " +
+                    (tasks == 0 ? 0 : runMillis / tasks) + "ms run on average";
+        }
+    }
+
+    public static final class Handle {
+        private final Lane lane;
+        private final String key;
+        private final long submitted = SystemClock.elapsedRealtime();
+        private Thread thread;
+        private boolean cancelled;
+
+        private Handle(Lane lane, String key) {
+            this.lane = lane;
+            this.key = key;
+        }
+
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        public synchronized void cancel() {
+            cancelled = true;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+
+        /**
+         * @return whether the task may run on the current thread, false if it was cancelled
+         */
+        private synchronized boolean start() {
+            if (cancelled) return false;
+            thread = Thread.currentThread();
+            return true;
+        }
+
+        private synchronized void finish() {
+            thread = null;
+            // do not let an interrupt meant for this task reach the next one
+            Thread.interrupted();
+        }
+    }
+
+    private static final class LaneStats {
+        int tasks;
+        int cancelled;
+        long waitMillis;
+        long runMillis;
+    }
+
+    private final Map<Lane, ExecutorService> executors = new EnumMap<>(Lane.class);
+    private final Map<Lane, LaneStats> stats = new EnumMap<>(Lane.class);
+    private final Map<String, Handle> latest = new HashMap<>();
+
+    public TaskScheduler() {
+        for (var lane : Lane.values()) {
+            var name = lane.name().toLowerCase(Locale.ROOT);
+            executors.put(lane, Executors.newSingleThreadExecutor(r -> new Thread(r, name)));
+            stats.put(lane, new LaneStats());
+        }
+    }
+
+    /**
+     * Queues the task on the lane, cancelling the previous task submitted with the same key.
+     */
+    public Handle submit(Lane lane, String key, Task task) {
+        var handle = new Handle(lane, key);
+        Handle previous;
+        synchronized (this) {
+            previous = latest.put(key, handle);
+        }
+        if (previous != null) {
+            previous.cancel();
+        }
+        executors.get(lane).execute(() -> run(handle, task));
+        return handle;
+    }
+
+    private void run(Handle handle, Task task) {
+        long start = SystemClock.elapsedRealtime();
+        long wait = start - handle.submitted;
+        if (!handle.start()) {
+            record(handle, wait, 0, true);
+            return;
+        }
+        try {
+            task.run(handle);
+        } catch (Exception e) {
+            if (!handle.isCancelled()) {
+                Log.e(AppApplication.TAG, handle.lane + " task " + handle.key, e);
+            }
+        } finally {
+            handle.finish();
+            long elapsed = SystemClock.elapsedRealtime() - start;
+            record(handle, wait, elapsed, handle.isCancelled());
+        }
+    }
+
+    private synchronized void record(Handle handle, long wait, long elapsed, boolean cancelled) {
+        latest.remove(handle.key, handle);
+        var lane = stats.get(handle.lane);
+        lane.tasks++;
+        lane.waitMillis += wait;
+        lane.runMillis += elapsed;
+        if (cancelled) {
+            lane.cancelled++;
+        }
+        if (BuildConfig.DEBUG) {
+            Log.d(AppApplication.TAG, handle.lane + " " + handle.key
+                    + (cancelled ? " cancelled" : "")
+                    + ", waited " + wait + "ms, ran " + elapsed + "ms");
+        }
+    }
+
+    public synchronized Stats getStats(Lane lane) {
+        var s = stats.get(lane);
+        return new Stats(s.tasks, s.cancelled, s.waitMillis, s.runMillis);
+    }
+}
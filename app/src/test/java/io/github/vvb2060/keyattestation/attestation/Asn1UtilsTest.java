@@ -0,0 +1,184 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Enumerated;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.ASN1Set;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.DEROctetString;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class Asn1UtilsTest {
+    private static final BigInteger INT_MAX = BigInteger.valueOf(Integer.MAX_VALUE);
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+    private static List<BigInteger> values() {
+        var values = new ArrayList<BigInteger>();
+        for (var bound : new BigInteger[]{BigInteger.ZERO, INT_MAX, LONG_MAX}) {
+            for (int delta = -2; delta <= 2; delta++) {
+                values.add(bound.add(BigInteger.valueOf(delta)));
+            }
+        }
+        var random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            var value = new BigInteger(1 + random.nextInt(80), random);
+            values.add(random.nextBoolean() ? value : value.negate());
+        }
+        return values;
+    }
+
+    @Test
+    public void integersMatchBigIntegerBounds() throws CertificateParsingException {
+        for (var value : values()) {
+            var integer = new ASN1Integer(value);
+            if (value.signum() >= 0 && value.compareTo(INT_MAX) <= 0) {
+                assertEquals(value.intValue(), Asn1Utils.getIntegerFromAsn1(integer));
+            } else {
+                assertThrows(value.toString(), CertificateParsingException.class,
+                        () -> Asn1Utils.getIntegerFromAsn1(integer));
+            }
+            if (value.signum() >= 0 && value.compareTo(LONG_MAX) <= 0) {
+                assertEquals(Long.valueOf(value.longValue()), Asn1Utils.getLongFromAsn1(integer));
+            } else {
+                assertThrows(value.toString(), CertificateParsingException.class,
+                        () -> Asn1Utils.getLongFromAsn1(integer));
+            }
+        }
+    }
+
+    @Test
+    public void enumeratedMatchesBigIntegerBounds() throws CertificateParsingException {
+        for (var value : values()) {
+            // BouncyCastle rejects negative enumerated values itself
+            if (value.signum() < 0) continue;
+            var enumerated = new ASN1Enumerated(value);
+            if (value.compareTo(INT_MAX) <= 0) {
+                assertEquals(value.intValue(), Asn1Utils.getIntegerFromAsn1(enumerated));
+            } else {
+                assertThrows(value.toString(), CertificateParsingException.class,
+                        () -> Asn1Utils.getIntegerFromAsn1(enumerated));
+            }
+        }
+    }
+
+    @Test
+    public void otherTypesAreRejected() {
+        var octets = new DEROctetString(new byte[]{1});
+        assertThrows(CertificateParsingException.class, () -> Asn1Utils.getIntegerFromAsn1(octets));
+        assertThrows(CertificateParsingException.class, () -> Asn1Utils.getLongFromAsn1(octets));
+        var enumerated = new ASN1Enumerated(1);
+        assertThrows(CertificateParsingException.class,
+                () -> Asn1Utils.getLongFromAsn1(enumerated));
+    }
+
+    private static void collectIntegers(ASN1Encodable value, List<ASN1Encodable> integers) {
+        if (value instanceof ASN1Integer || value instanceof ASN1Enumerated) {
+            integers.add(value);
+        } else if (value instanceof ASN1Sequence sequence) {
+            for (var element : sequence) {
+                collectIntegers(element, integers);
+            }
+        } else if (value instanceof ASN1Set set) {
+            for (var element : set) {
+                collectIntegers(element, integers);
+            }
+        } else if (value instanceof ASN1TaggedObject tagged) {
+            collectIntegers(tagged.getBaseObject(), integers);
+        }
+    }
+
+    /**
+     * @return every INTEGER and ENUMERATED of the key descriptions in the test chains
+     */
+    private static List<ASN1Encodable> keyDescriptionIntegers()
+            throws CertificateException, IOException {
+        var factory = CertificateFactory.getInstance("X.509");
+        var integers = new ArrayList<ASN1Encodable>();
+        for (var name : new String[]{"leaf1.pem", "leaf2.pem", "bad.pem"}) {
+            try (InputStream in = Asn1UtilsTest.class.getResourceAsStream("/chains/" + name)) {
+                var cert = (X509Certificate) factory.generateCertificate(in);
+                var extension = ASN1OctetString.getInstance(
+                        cert.getExtensionValue(Attestation.ASN1_OID));
+                collectIntegers(ASN1Primitive.fromByteArray(extension.getOctets()), integers);
+            }
+        }
+        return integers;
+    }
+
+    // INTEGER as long, since dates are in milliseconds, and ENUMERATED as int
+    private static long direct(ASN1Encodable value) throws CertificateParsingException {
+        return value instanceof ASN1Integer
+                ? Asn1Utils.getLongFromAsn1(value) : Asn1Utils.getIntegerFromAsn1(value);
+    }
+
+    // the same through the BigInteger round trip used before
+    private static long viaBigInteger(ASN1Encodable value) throws CertificateParsingException {
+        BigInteger bigInt;
+        BigInteger max;
+        if (value instanceof ASN1Integer integer) {
+            bigInt = integer.getValue();
+            max = LONG_MAX;
+        } else {
+            bigInt = ((ASN1Enumerated) value).getValue();
+            max = INT_MAX;
+        }
+        if (bigInt.compareTo(max) > 0 || bigInt.compareTo(BigInteger.ZERO) < 0) {
+            throw new CertificateParsingException("INTEGER out of bounds");
+        }
+        return bigInt.longValue();
+    }
+
+    @Test
+    public void keyDescriptionIntegersDecodeFasterWithoutBigInteger() throws Exception {
+        var integers = keyDescriptionIntegers();
+        assertTrue(integers.size() > 10);
+        long expected = 0;
+        for (var integer : integers) {
+            assertEquals(viaBigInteger(integer), direct(integer));
+            expected += viaBigInteger(integer);
+        }
+
+        int rounds = 20000;
+        long direct = Long.MAX_VALUE;
+        long big = Long.MAX_VALUE;
+        long sink = 0;
+        for (int trial = 0; trial < 10; trial++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                for (var integer : integers) {
+                    sink += direct(integer);
+                }
+            }
+            direct = Math.min(direct, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                for (var integer : integers) {
+                    sink += viaBigInteger(integer);
+                }
+            }
+            big = Math.min(big, System.nanoTime() - start);
+        }
+        System.out.printf("%d key description integers: direct %d ns, BigInteger %d ns%n",
+                integers.size(), direct / rounds, big / rounds);
+        assertEquals(expected * rounds * 20, sink);
+        assertTrue(direct < big);
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.io.BaseEncoding;
+
+import org.junit.Test;
+
+import java.security.cert.CertificateParsingException;
+
+public class AttestationApplicationIdTest {
+    // {{("io.github.vvb2060.keyattestation", 1)}, {00 01 .. 1f}}
+    private static final byte[] ENCODED = BaseEncoding.base16().lowerCase().decode(
+            "304d312730250420696f2e6769746875622e767662323036302e6b65796174746573746174696f6e"
+                    + "0201013122" + "0420000102030405060708090a0b0c0d0e0f"
+                    + "101112131415161718191a1b1c1d1e1f");
+
+    @Test
+    public void internedInstanceHandsOutCopiesOfDigests() throws CertificateParsingException {
+        var applicationId = AttestationApplicationId.parse(ENCODED);
+        assertSame(applicationId, AttestationApplicationId.parse(ENCODED.clone()));
+        assertEquals("io.github.vvb2060.keyattestation",
+                applicationId.getAttestationPackageInfos().get(0).getPackageName());
+
+        var digest = applicationId.getSignatureDigests().get(0);
+        var expected = digest.clone();
+        digest[0] = (byte) 0xff;
+        assertArrayEquals(expected, applicationId.getSignatureDigests().get(0));
+        assertArrayEquals(expected,
+                AttestationApplicationId.parse(ENCODED).getSignatureDigests().get(0));
+    }
+}
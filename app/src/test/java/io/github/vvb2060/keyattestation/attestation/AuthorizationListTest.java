@@ -0,0 +1,122 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateParsingException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+public class AuthorizationListTest {
+    private static final long CREATION = 1700000000000L;
+
+    private static DERTaggedObject tag(int tag, ASN1Encodable value) {
+        return new DERTaggedObject(true, tag & AuthorizationList.KEYMASTER_TAG_TYPE_MASK, value);
+    }
+
+    private static AuthorizationList parse(ASN1Encodable... values) throws Exception {
+        var encoded = new DERSequence(values).getEncoded(ASN1Encoding.DER);
+        return new AuthorizationList(new DerReader(encoded).next());
+    }
+
+    private static ASN1Encodable purposes() {
+        return tag(AuthorizationList.KM_TAG_PURPOSE, new DERSet(new ASN1Encodable[]{
+                new ASN1Integer(AuthorizationList.KM_PURPOSE_SIGN),
+                new ASN1Integer(AuthorizationList.KM_PURPOSE_VERIFY)}));
+    }
+
+    @Test
+    public void valuesAreDecodedWhenRead() throws Exception {
+        var list = parse(purposes(),
+                tag(AuthorizationList.KM_TAG_KEY_SIZE, new ASN1Integer(256)),
+                tag(AuthorizationList.KM_TAG_NO_AUTH_REQUIRED, DERNull.INSTANCE),
+                tag(AuthorizationList.KM_TAG_CREATION_DATETIME, new ASN1Integer(CREATION)),
+                tag(AuthorizationList.KM_TAG_OS_VERSION, new ASN1Integer(150000)),
+                tag(AuthorizationList.KM_TAG_ATTESTATION_ID_BRAND,
+                        new DEROctetString("google".getBytes(StandardCharsets.UTF_8))));
+        var purposes = list.getPurposes();
+        assertEquals(2, purposes.size());
+        assertTrue(purposes.contains(AuthorizationList.KM_PURPOSE_SIGN));
+        assertTrue(purposes.contains(AuthorizationList.KM_PURPOSE_VERIFY));
+        assertSame(purposes, list.getPurposes());
+        assertEquals(Integer.valueOf(256), list.getKeySize());
+        assertEquals(Boolean.TRUE, list.getNoAuthRequired());
+        assertEquals(new Date(CREATION), list.getCreationDateTime());
+        assertEquals(Integer.valueOf(150000), list.getOsVersion());
+        assertEquals("google", list.getBrand());
+        assertNull(list.getAlgorithm());
+        assertNull(list.getModel());
+        list.decodeAll();
+    }
+
+    @Test
+    public void decodeAllDecodesUnreadValues() throws Exception {
+        var list = parse(purposes(),
+                tag(AuthorizationList.KM_TAG_OS_VERSION, new ASN1Integer(150000)));
+        list.decodeAll();
+        assertEquals(2, list.getPurposes().size());
+        assertEquals(Integer.valueOf(150000), list.getOsVersion());
+    }
+
+    @Test
+    public void malformedValueFailsWhenDecoded() throws Exception {
+        // the list is only indexed, so a malformed value does not fail the constructor
+        var list = parse(purposes(),
+                tag(AuthorizationList.KM_TAG_KEY_SIZE, new DEROctetString(new byte[]{1})),
+                tag(AuthorizationList.KM_TAG_OS_VERSION, new ASN1Integer(150000)));
+        assertNull(list.getKeySize());
+        assertNull(list.getKeySize());
+        assertEquals(2, list.getPurposes().size());
+        assertEquals(Integer.valueOf(150000), list.getOsVersion());
+        assertThrows(CertificateParsingException.class, list::decodeAll);
+        assertThrows(CertificateParsingException.class, list::decodeAll);
+
+        var unread = parse(tag(AuthorizationList.KM_TAG_PURPOSE,
+                new DEROctetString(new byte[]{AuthorizationList.KM_PURPOSE_SIGN})));
+        assertThrows(CertificateParsingException.class, unread::decodeAll);
+        assertNull(unread.getPurposes());
+    }
+
+    @Test
+    public void unknownTagFailsTheIndex() {
+        assertThrows(CertificateParsingException.class,
+                () -> parse(purposes(), new DERTaggedObject(true, 9999, new ASN1Integer(1))));
+        assertThrows(CertificateParsingException.class,
+                () -> parse(purposes(), new ASN1Integer(1)));
+    }
+
+    @Test
+    public void concurrentReadsDecodeOnce() throws Exception {
+        var list = parse(purposes(),
+                tag(AuthorizationList.KM_TAG_CREATION_DATETIME, new ASN1Integer(CREATION)));
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var tasks = new ArrayList<Callable<Object>>();
+            for (int i = 0; i < 64; i++) {
+                tasks.add(i % 2 == 0 ? list::getPurposes : list::getCreationDateTime);
+            }
+            var futures = executor.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                assertSame(futures.get(i % 2).get(), futures.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.BaseEncoding;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.security.cert.CertificateParsingException;
+import java.util.List;
+import java.util.Random;
+
+import co.nstant.in.cbor.CborBuilder;
+import co.nstant.in.cbor.CborDecoder;
+import co.nstant.in.cbor.CborEncoder;
+import co.nstant.in.cbor.CborException;
+import co.nstant.in.cbor.model.Array;
+import co.nstant.in.cbor.model.ByteString;
+import co.nstant.in.cbor.model.DataItem;
+import co.nstant.in.cbor.model.Map;
+import co.nstant.in.cbor.model.Number;
+import co.nstant.in.cbor.model.SimpleValue;
+import co.nstant.in.cbor.model.SimpleValueType;
+import co.nstant.in.cbor.model.UnicodeString;
+
+public class CborReaderTest {
+    private static final MalformedInput<CborReader> MALFORMED =
+            new MalformedInput<>(CborReader::new);
+
+    private static CborReader reader(String hex) {
+        return new CborReader(BaseEncoding.base16().lowerCase().decode(hex));
+    }
+
+    private static long readLong(String hex) throws CertificateParsingException {
+        var reader = reader(hex);
+        var value = reader.readLong();
+        assertFalse(reader.hasNext());
+        return value;
+    }
+
+    // Examples from RFC 8949 Appendix A
+    @Test
+    public void integers() throws CertificateParsingException {
+        assertEquals(0, readLong("00"));
+        assertEquals(23, readLong("17"));
+        assertEquals(24, readLong("1818"));
+        assertEquals(1000, readLong("1903e8"));
+        assertEquals(1000000, readLong("1a000f4240"));
+        assertEquals(1000000000000L, readLong("1b000000e8d4a51000"));
+        assertEquals(-1, readLong("20"));
+        assertEquals(-1000, readLong("3903e7"));
+        assertEquals(Long.MAX_VALUE, readLong("1b7fffffffffffffff"));
+        assertEquals(Long.MIN_VALUE, readLong("3b7fffffffffffffff"));
+        assertEquals(1000, reader("1903e8").readInt());
+        MALFORMED.assertMalformed("1bffffffffffffffff", CborReader::readLong);
+        MALFORMED.assertMalformed("3bffffffffffffffff", CborReader::readLong);
+        MALFORMED.assertMalformed("1a80000000", CborReader::readInt);
+        MALFORMED.assertMalformed("f5", CborReader::readLong);
+    }
+
+    @Test
+    public void simpleValuesAndStrings() throws CertificateParsingException {
+        assertFalse(reader("f4").readBoolean());
+        assertTrue(reader("f5").readBoolean());
+        MALFORMED.assertMalformed("f6", CborReader::readBoolean);
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, reader("4401020304").readBytes());
+        assertArrayEquals(new byte[0], reader("40").readBytes());
+        assertEquals("IETF", reader("6449455446").readUnicodeString());
+        assertEquals("\u00fc", reader("62c3bc").readUnicodeString());
+        assertEquals("IETF", reader("4449455446").readByteString());
+        MALFORMED.assertMalformed("6449455446", CborReader::readBytes);
+        MALFORMED.assertMalformed("4449455446", CborReader::readUnicodeString);
+    }
+
+    @Test
+    public void containers() throws CertificateParsingException {
+        // [1, [2, 3], [4, 5]]
+        var reader = reader("8301820203820405");
+        assertEquals(3, reader.readArraySize());
+        assertEquals(1, reader.readInt());
+        assertEquals(2, reader.readArraySize());
+        assertEquals(2, reader.readInt());
+        assertEquals(3, reader.readInt());
+        reader.skip();
+        assertFalse(reader.hasNext());
+
+        // {1: 2, 3: 4}
+        reader = reader("a201020304");
+        assertEquals(2, reader.readMapSize());
+        assertEquals(1, reader.readInt());
+        reader.skip();
+        assertEquals(3, reader.readInt());
+        assertEquals(4, reader.readInt());
+        assertFalse(reader.hasNext());
+
+        assertEquals(List.of(true, false), reader("82f5f4").readBooleanList());
+        var purposes = reader("820203").readEnumSet();
+        assertEquals(2, purposes.size());
+        assertTrue(purposes.contains(2));
+        assertTrue(purposes.contains(3));
+        MALFORMED.assertMalformed("8120", CborReader::readEnumSet);
+    }
+
+    @Test
+    public void skipConsumesNestedItems() throws CertificateParsingException {
+        // {"a": 1, "b": [2, 3]}, 1(1363896240), h'01', 1.5, then 7
+        var reader = reader("a26161016162820203" + "c11a514b67b0" + "4101" + "f93e00" + "07");
+        for (int i = 0; i < 4; i++) {
+            reader.skip();
+        }
+        assertEquals(7, reader.readInt());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void rejectsMalformedEncodings() {
+        // empty and truncated arguments
+        MALFORMED.assertMalformed("", CborReader::readLong);
+        MALFORMED.assertMalformed("19", CborReader::readLong);
+        MALFORMED.assertMalformed("1b0000", CborReader::readLong);
+        // reserved additional info and indefinite lengths
+        MALFORMED.assertMalformed("1c", CborReader::readLong);
+        MALFORMED.assertMalformed("5f4101ff", CborReader::readBytes);
+        MALFORMED.assertMalformed("9f01ff", CborReader::readArraySize);
+        MALFORMED.assertMalformed("9f01ff", CborReader::skip);
+        // lengths past the end of the data
+        MALFORMED.assertMalformed("4501020304", CborReader::readBytes);
+        MALFORMED.assertMalformed("7a7fffffff", CborReader::readUnicodeString);
+        MALFORMED.assertMalformed("5bffffffffffffffff00", CborReader::readBytes);
+        MALFORMED.assertMalformed("8501", CborReader::readArraySize);
+        MALFORMED.assertMalformed("a201", CborReader::readMapSize);
+        MALFORMED.assertMalformed("8201", CborReader::skip);
+        // wrong types
+        MALFORMED.assertMalformed("01", CborReader::readArraySize);
+        MALFORMED.assertMalformed("80", CborReader::readMapSize);
+    }
+
+    @Test
+    public void corruptedInputOnlyThrowsParsingExceptions() {
+        var random = new Random(1);
+        var valid = BaseEncoding.base16().lowerCase().decode(
+                "a3016449455446028301820203820405" + "03a20144010203040282f5f4");
+        for (int i = 0; i < 10000; i++) {
+            var corrupted = valid.clone();
+            int flips = 1 + random.nextInt(3);
+            for (int j = 0; j < flips; j++) {
+                corrupted[random.nextInt(corrupted.length)] = (byte) random.nextInt(256);
+            }
+            var reader = new CborReader(corrupted);
+            try {
+                while (reader.hasNext()) {
+                    reader.skip();
+                }
+            } catch (CertificateParsingException ignored) {
+            } catch (RuntimeException e) {
+                throw new AssertionError(BaseEncoding.base16().encode(corrupted), e);
+            }
+        }
+    }
+
+    // {{("io.github.vvb2060.keyattestation", 1)}, {00 01 .. 1f}}
+    private static final byte[] APPLICATION_ID = BaseEncoding.base16().lowerCase().decode(
+            "304d312730250420696f2e6769746875622e767662323036302e6b65796174746573746174696f6e"
+                    + "0201013122" + "0420000102030405060708090a0b0c0d0e0f"
+                    + "101112131415161718191a1b1c1d1e1f");
+
+    /**
+     * @return an EAT extension as a KeyMint TEE would encode it for an EC P-256 signing key
+     */
+    private static byte[] eatFixture() throws CborException {
+        var random = new Random(1);
+        var key = new byte[32];
+        random.nextBytes(key);
+        var output = new ByteArrayOutputStream();
+        new CborEncoder(output).encode(new CborBuilder().addMap()
+                .put(EatClaim.ATTESTATION_VERSION, 300)
+                .put(EatClaim.KEYMASTER_VERSION, 300)
+                .put(EatClaim.SECURITY_LEVEL, EatClaim.SECURITY_LEVEL_SECURE_RESTRICTED)
+                .put(EatClaim.NONCE, "Sat Oct 17 18:30:00 UTC 2026".getBytes())
+                .put(EatClaim.CTI, new byte[16])
+                .put(EatClaim.VERIFIED_BOOT_KEY, key)
+                .put(EatClaim.DEVICE_LOCKED, true)
+                .put(EatClaim.VERIFIED_BOOT_HASH, key.clone())
+                .putArray(EatClaim.BOOT_STATE)
+                .add(true).add(true).add(true).add(true).add(false).end()
+                .put(EatClaim.OFFICIAL_BUILD, true)
+                .putMap(EatClaim.SUBMODS)
+                .putMap(EatClaim.SUBMOD_SOFTWARE)
+                .put(EatClaim.SECURITY_LEVEL, EatClaim.SECURITY_LEVEL_UNRESTRICTED)
+                .put(EatClaim.IAT, 1792261800000L)
+                .put(EatClaim.ATTESTATION_APPLICATION_ID, APPLICATION_ID)
+                .end()
+                .putMap(EatClaim.SUBMOD_TEE)
+                .put(EatClaim.SECURITY_LEVEL, EatClaim.SECURITY_LEVEL_SECURE_RESTRICTED)
+                .putArray(EatClaim.PURPOSE).add(2).add(3).end()
+                .put(EatClaim.ALGORITHM, 3)
+                .put(EatClaim.KEY_SIZE, 256)
+                .putArray(EatClaim.DIGEST).add(4).end()
+                .put(EatClaim.EC_CURVE, EatClaim.EAT_EC_CURVE_P_256)
+                .put(EatClaim.NO_AUTH_REQUIRED, true)
+                .put(EatClaim.ORIGIN, 0)
+                .put(EatClaim.OS_VERSION, 160000)
+                .put(EatClaim.OS_PATCHLEVEL, 202609)
+                .put(EatClaim.VENDOR_PATCHLEVEL, 20260905)
+                .put(EatClaim.BOOT_PATCHLEVEL, 20260905)
+                .end()
+                .end()
+                .end().build());
+        return output.toByteArray();
+    }
+
+    /**
+     * Reads every claim of the fixture with {@link CborReader}, as {@link EatAttestation} does.
+     *
+     * @return the key size of the TEE submod
+     */
+    private static int readEat(byte[] eat) throws CertificateParsingException {
+        var reader = new CborReader(eat);
+        int keySize = 0;
+        for (int n = reader.readMapSize(); n > 0; n--) {
+            switch (reader.readInt()) {
+                case EatClaim.ATTESTATION_VERSION, EatClaim.KEYMASTER_VERSION,
+                     EatClaim.SECURITY_LEVEL -> reader.readInt();
+                case EatClaim.NONCE, EatClaim.CTI, EatClaim.VERIFIED_BOOT_KEY,
+                     EatClaim.VERIFIED_BOOT_HASH -> reader.readBytes();
+                case EatClaim.DEVICE_LOCKED, EatClaim.OFFICIAL_BUILD -> reader.readBoolean();
+                case EatClaim.BOOT_STATE -> reader.readBooleanList();
+                case EatClaim.SUBMODS -> {
+                    for (int m = reader.readMapSize(); m > 0; m--) {
+                        var submod = reader.readUnicodeString();
+                        var list = new AuthorizationList(reader);
+                        if (submod.equals(EatClaim.SUBMOD_TEE)) {
+                            keySize = list.getKeySize();
+                        }
+                    }
+                }
+                default -> throw new AssertionError();
+            }
+        }
+        return keySize;
+    }
+
+    private static int getInt(DataItem item) {
+        return ((Number) item).getValue().intValue();
+    }
+
+    private static boolean getBoolean(DataItem item) {
+        return ((SimpleValue) item).getSimpleValueType() == SimpleValueType.TRUE;
+    }
+
+    private static void getIntSet(DataItem item) {
+        var set = new KmEnumSet.Builder();
+        for (var element : ((Array) item).getDataItems()) {
+            set.add(getInt(element));
+        }
+        set.build();
+    }
+
+    /**
+     * Reads every claim of the fixture from a co.nstant.in.cbor tree, the way EAT was decoded
+     * before {@link CborReader}: the whole extension is decoded first, then each value is cast
+     * out of the map by key.
+     *
+     * @return the key size of the TEE submod
+     */
+    private static int decodeEat(byte[] eat) throws CborException {
+        var claims = (Map) CborDecoder.decode(eat).get(0);
+        int keySize = 0;
+        for (var key : claims.getKeys()) {
+            var value = claims.get(key);
+            switch (getInt(key)) {
+                case EatClaim.ATTESTATION_VERSION, EatClaim.KEYMASTER_VERSION,
+                     EatClaim.SECURITY_LEVEL -> getInt(value);
+                case EatClaim.NONCE, EatClaim.CTI, EatClaim.VERIFIED_BOOT_KEY,
+                     EatClaim.VERIFIED_BOOT_HASH -> ((ByteString) value).getBytes();
+                case EatClaim.DEVICE_LOCKED, EatClaim.OFFICIAL_BUILD -> getBoolean(value);
+                case EatClaim.BOOT_STATE -> {
+                    for (var element : ((Array) value).getDataItems()) {
+                        getBoolean(element);
+                    }
+                }
+                case EatClaim.SUBMODS -> {
+                    var submods = (Map) value;
+                    for (var name : submods.getKeys()) {
+                        var submod = (Map) submods.get(name);
+                        for (var claim : submod.getKeys()) {
+                            var item = submod.get(claim);
+                            switch (getInt(claim)) {
+                                case EatClaim.PURPOSE, EatClaim.DIGEST -> getIntSet(item);
+                                case EatClaim.ATTESTATION_APPLICATION_ID ->
+                                        ((ByteString) item).getBytes();
+                                case EatClaim.NO_AUTH_REQUIRED -> getBoolean(item);
+                                case EatClaim.IAT -> ((Number) item).getValue().longValue();
+                                case EatClaim.KEY_SIZE -> {
+                                    if (((UnicodeString) name).getString()
+                                            .equals(EatClaim.SUBMOD_TEE)) {
+                                        keySize = getInt(item);
+                                    }
+                                }
+                                default -> getInt(item);
+                            }
+                        }
+                    }
+                }
+                default -> throw new AssertionError();
+            }
+        }
+        return keySize;
+    }
+
+    @Test
+    public void readsEatFasterThanTreeDecoder() throws Exception {
+        var eat = eatFixture();
+        assertEquals(256, readEat(eat));
+        assertEquals(256, decodeEat(eat));
+
+        int rounds = 20000;
+        long reader = Long.MAX_VALUE;
+        long tree = Long.MAX_VALUE;
+        int sink = 0;
+        for (int trial = 0; trial < 5; trial++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                sink += readEat(eat);
+            }
+            reader = Math.min(reader, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                sink += decodeEat(eat);
+            }
+            tree = Math.min(tree, System.nanoTime() - start);
+        }
+        System.out.printf("EAT of %d bytes: CborReader %d ns, co.nstant.in.cbor %d ns%n",
+                eat.length, reader / rounds, tree / rounds);
+        assertEquals(256L * rounds * 10, sink);
+        assertTrue(reader < tree);
+    }
+}
@@ -0,0 +1,214 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.fail;
+
+import com.google.common.io.BaseEncoding;
+
+import org.bouncycastle.asn1.ASN1Boolean;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Enumerated;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.ASN1Set;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.security.cert.CertificateParsingException;
+import java.util.Arrays;
+import java.util.Random;
+
+public class DerReaderTest {
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+    private static final MalformedInput<DerReader> MALFORMED =
+            new MalformedInput<>(DerReader::new);
+
+    private static ASN1Encodable random(Random random, int depth) {
+        int type = random.nextInt(depth == 0 ? 5 : 8);
+        return switch (type) {
+            case 0 -> new ASN1Integer(switch (random.nextInt(4)) {
+                case 0 -> BigInteger.valueOf(random.nextInt(256));
+                case 1 -> BigInteger.valueOf(random.nextLong());
+                case 2 -> new BigInteger(64 + random.nextInt(64), random);
+                default -> BigInteger.valueOf(random.nextInt()).negate();
+            });
+            case 1 -> new ASN1Enumerated(random.nextInt(Integer.MAX_VALUE));
+            case 2 -> ASN1Boolean.getInstance(random.nextBoolean());
+            case 3 -> {
+                var bytes = new byte[random.nextInt(300)];
+                random.nextBytes(bytes);
+                yield new DEROctetString(bytes);
+            }
+            case 4 -> new ASN1ObjectIdentifier(random.nextInt(3) + "." + random.nextInt(40) +
+                    "." + (random.nextLong() & Long.MAX_VALUE >> 8) + "." + random.nextInt(128));
+            case 5, 6 -> {
+                var vector = new ASN1EncodableVector();
+                int count = random.nextInt(6);
+                for (int i = 0; i < count; i++) {
+                    vector.add(random(random, depth - 1));
+                }
+                yield type == 5 ? new DERSequence(vector) : new DERSet(vector);
+            }
+            default -> {
+                // covers the one and the multi byte forms of tag numbers
+                int tagNo = random.nextBoolean() ? random.nextInt(31) : 31 + random.nextInt(2000);
+                yield new DERTaggedObject(true, tagNo, random(random, depth - 1));
+            }
+        };
+    }
+
+    /**
+     * Checks that the element at the reader decodes to the same value as BouncyCastle's.
+     */
+    private static void compare(ASN1Primitive expected, DerReader reader) throws Exception {
+        var data = reader.data();
+        assertArrayEquals(expected.getEncoded(ASN1Encoding.DER),
+                Arrays.copyOfRange(data, reader.elementStart(), reader.elementEnd()));
+        if (expected instanceof ASN1Enumerated enumerated) {
+            assertEquals(enumerated.getValue().intValueExact(), reader.getInt());
+        } else if (expected instanceof ASN1Integer integer) {
+            var value = integer.getValue();
+            if (value.signum() >= 0 && value.compareTo(LONG_MAX) <= 0) {
+                assertEquals(value.longValueExact(), reader.getLong());
+            } else {
+                assertThrows(CertificateParsingException.class, reader::getLong);
+            }
+        } else if (expected instanceof ASN1Boolean bool) {
+            assertEquals(bool.isTrue(), reader.getBoolean());
+        } else if (expected instanceof ASN1OctetString octets) {
+            assertArrayEquals(octets.getOctets(), reader.getOctets());
+        } else if (expected instanceof ASN1ObjectIdentifier oid) {
+            assertEquals(oid.getId(), reader.getOid());
+        } else if (expected instanceof ASN1Sequence sequence) {
+            compare(sequence.toArray(), reader.enter(DerReader.SEQUENCE, "sequence"));
+        } else if (expected instanceof ASN1Set set) {
+            compare(set.toArray(), reader.enter(DerReader.SET, "set"));
+        } else if (expected instanceof ASN1TaggedObject tagged) {
+            assertEquals(tagged.getTagNo(), reader.tagNo());
+            compare(tagged.getExplicitBaseObject().toASN1Primitive(), reader.unwrap());
+        } else {
+            fail("Unexpected " + expected.getClass());
+        }
+    }
+
+    private static void compare(ASN1Encodable[] expected, DerReader reader) throws Exception {
+        for (var element : expected) {
+            compare(element.toASN1Primitive(), reader.next());
+        }
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void decodesLikeBouncyCastle() throws Exception {
+        var random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            var encoded = random(random, 4).toASN1Primitive().getEncoded(ASN1Encoding.DER);
+            // parse the encoding back, so a DER SET is compared in its sorted order
+            var expected = ASN1Primitive.fromByteArray(encoded);
+            var reader = new DerReader(encoded);
+            compare(expected, reader.next());
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void readsSliceOfArray() throws Exception {
+        var encoded = new DERSequence(new ASN1Integer(7)).getEncoded(ASN1Encoding.DER);
+        var padded = new byte[encoded.length + 4];
+        System.arraycopy(encoded, 0, padded, 2, encoded.length);
+        var reader = new DerReader(padded, 2, encoded.length);
+        var sequence = reader.next().enter(DerReader.SEQUENCE, "sequence");
+        assertEquals(7, sequence.next().getInt());
+        assertFalse(sequence.hasNext());
+        assertFalse(reader.hasNext());
+        assertEquals(2, reader.elementStart());
+    }
+
+    @Test
+    public void rejectsMalformedEncodings() {
+        // truncated header and content
+        MALFORMED.assertMalformed("02", DerReader::next);
+        MALFORMED.assertMalformed("020201", DerReader::next);
+        // indefinite length, and more length octets than supported
+        MALFORMED.assertMalformed("3080020101", DerReader::next);
+        MALFORMED.assertMalformed("0285000000000101", DerReader::next);
+        // unterminated multi byte tag number
+        MALFORMED.assertMalformed("bf85", DerReader::next);
+        // integers that are not minimally encoded, empty or negative
+        MALFORMED.assertMalformed("0202007f", reader -> reader.next().getLong());
+        MALFORMED.assertMalformed("0202ff80", reader -> reader.next().getLong());
+        MALFORMED.assertMalformed("0200", reader -> reader.next().getLong());
+        MALFORMED.assertMalformed("0201ff", reader -> reader.next().getLong());
+        MALFORMED.assertMalformed("020900ffffffffffffffff", reader -> reader.next().getLong());
+        MALFORMED.assertMalformed("020500ffffffff", reader -> reader.next().getInt());
+        // booleans other than 0x00 and 0xff
+        MALFORMED.assertMalformed("010101", reader -> reader.next().getBoolean());
+        // an explicit tag must wrap exactly one element
+        MALFORMED.assertMalformed("a106020101020102", reader -> reader.next().unwrap());
+        MALFORMED.assertMalformed("020101", reader -> reader.next().unwrap());
+        // wrong type
+        MALFORMED.assertMalformed("0401ff", reader -> reader.next().getEnumSet());
+        MALFORMED.assertMalformed("0603550483", reader -> reader.next().getOid());
+    }
+
+    /**
+     * Walks every element of the reader, decoding primitives as the attestation parser would.
+     */
+    private static void walk(DerReader reader) throws CertificateParsingException {
+        while (reader.hasNext()) {
+            reader.next();
+            switch (reader.tag()) {
+                case DerReader.SEQUENCE -> walk(reader.enter(DerReader.SEQUENCE, "sequence"));
+                case DerReader.SET -> walk(reader.enter(DerReader.SET, "set"));
+                case DerReader.INTEGER -> reader.getLong();
+                case DerReader.ENUMERATED -> reader.getInt();
+                case DerReader.BOOLEAN -> reader.getBoolean();
+                case DerReader.OCTET_STRING -> reader.getOctets();
+                case DerReader.OBJECT_IDENTIFIER -> reader.getOid();
+                default -> {
+                    if (reader.isExplicitTag()) {
+                        var data = reader.data();
+                        int end = reader.elementEnd();
+                        reader.unwrap();
+                        walk(new DerReader(data, reader.elementStart(),
+                                end - reader.elementStart()));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void corruptedInputOnlyThrowsParsingExceptions() throws Exception {
+        var random = new Random(2);
+        for (int i = 0; i < 5000; i++) {
+            var encoded = random(random, 4).toASN1Primitive().getEncoded(ASN1Encoding.DER);
+            var corrupted = encoded.clone();
+            int flips = 1 + random.nextInt(3);
+            for (int j = 0; j < flips; j++) {
+                corrupted[random.nextInt(corrupted.length)] = (byte) random.nextInt(256);
+            }
+            int length = random.nextInt(4) == 0 ? random.nextInt(corrupted.length + 1)
+                    : corrupted.length;
+            try {
+                walk(new DerReader(corrupted, 0, length));
+            } catch (CertificateParsingException ignored) {
+            } catch (RuntimeException e) {
+                throw new AssertionError(Arrays.toString(corrupted) + " length " + length, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.io.BaseEncoding;
+
+import java.security.cert.CertificateParsingException;
+import java.util.function.Function;
+
+/**
+ * Checks that a reader rejects malformed input with a {@link CertificateParsingException}.
+ *
+ * @param <T> the reader type, opened over the decoded hex input of each check
+ */
+final class MalformedInput<T> {
+
+    interface Action<T> {
+        void accept(T reader) throws CertificateParsingException;
+    }
+
+    private final Function<byte[], T> open;
+
+    MalformedInput(Function<byte[], T> open) {
+        this.open = open;
+    }
+
+    void assertMalformed(String hex, Action<T> action) {
+        var reader = open.apply(BaseEncoding.base16().lowerCase().decode(hex));
+        assertThrows(hex, CertificateParsingException.class, () -> action.accept(reader));
+    }
+}
@@ -0,0 +1,186 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+public class RevocationFilterTest {
+    private static final double RATE = 0.01;
+
+    private static List<BigInteger> serials(Random random, int count) {
+        var list = new ArrayList<BigInteger>(count);
+        for (int i = 0; i < count; i++) {
+            // up to 159 bits, so every serial is a positive magnitude of at most 20 bytes
+            list.add(new BigInteger(1 + random.nextInt(159), random));
+        }
+        return list;
+    }
+
+    private static byte[] magnitude(BigInteger serial) {
+        var bytes = serial.toByteArray();
+        int start = 0;
+        while (start < bytes.length - 1 && bytes[start] == 0) {
+            start++;
+        }
+        var result = new byte[bytes.length - start];
+        System.arraycopy(bytes, start, result, 0, result.length);
+        return result;
+    }
+
+    private static byte[] compile(List<BigInteger> revoked, double rate) throws IOException {
+        var entries = new JSONObject();
+        for (var serial : revoked) {
+            entries.put(serial.toString(16), new JSONObject()
+                    .put("status", "REVOKED")
+                    .put("reason", "KEY_COMPROMISE"));
+        }
+        return RevocationIndex.compile(entries, false, null, null, rate);
+    }
+
+    @Test
+    public void filterHasNoFalseNegatives() throws IOException {
+        var random = new Random(1);
+        var revoked = serials(random, 5000);
+        var filtered = RevocationIndex.open(compile(revoked, RATE), RATE);
+        var exact = filtered.withFilter(0);
+        for (var serial : revoked) {
+            var bytes = serial.toByteArray();
+            assertNotNull(serial.toString(16), filtered.get(bytes, 0, bytes.length));
+        }
+        for (var serial : serials(random, 20000)) {
+            var bytes = serial.toByteArray();
+            assertEquals(exact.get(bytes, 0, bytes.length), filtered.get(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test
+    public void falsePositiveRateIsNearTarget() {
+        var random = new Random(2);
+        var members = serials(random, 10000);
+        var filter = RevocationFilter.create(members.size(), RATE);
+        assertNotNull(filter);
+        for (var serial : members) {
+            var bytes = magnitude(serial);
+            filter.put(bytes, 0, bytes.length);
+        }
+        var set = new HashSet<>(members);
+        int positives = 0;
+        int probes = 0;
+        for (var serial : serials(random, 100000)) {
+            if (set.contains(serial)) continue;
+            probes++;
+            var bytes = magnitude(serial);
+            if (filter.mightContain(bytes, 0, bytes.length)) {
+                positives++;
+            }
+        }
+        // register blocking costs some accuracy, allow a few times the target
+        assertTrue("false positives: " + positives, positives < probes * RATE * 3);
+    }
+
+    @Test
+    public void storedFilterIsReadBack() throws IOException {
+        var random = new Random(3);
+        var members = serials(random, 1000);
+        var filter = RevocationFilter.create(members.size(), RATE);
+        for (var serial : members) {
+            var bytes = magnitude(serial);
+            filter.put(bytes, 0, bytes.length);
+        }
+        var output = new ByteArrayOutputStream();
+        filter.write(new DataOutputStream(output));
+        var buffer = ByteBuffer.wrap(output.toByteArray());
+        var read = RevocationFilter.read(buffer);
+        assertNotNull(read);
+        assertEquals(0, buffer.remaining());
+        for (var serial : serials(random, 10000)) {
+            var bytes = magnitude(serial);
+            assertEquals(filter.mightContain(bytes, 0, bytes.length),
+                    read.mightContain(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test
+    public void emptyAndCorruptedFilters() throws IOException {
+        assertNull(RevocationFilter.create(10, 0));
+        assertNull(RevocationFilter.create(10, 1));
+        assertNull(RevocationFilter.create(10, Double.NaN));
+
+        var output = new ByteArrayOutputStream();
+        RevocationFilter.writeEmpty(new DataOutputStream(output));
+        assertNull(RevocationFilter.read(ByteBuffer.wrap(output.toByteArray())));
+
+        var notPowerOfTwo = ByteBuffer.allocate(8 + 3 * Long.BYTES).putInt(2).putInt(3);
+        assertThrows(IOException.class, () -> RevocationFilter.read(notPowerOfTwo.rewind()));
+        var truncated = ByteBuffer.allocate(8 + Long.BYTES).putInt(2).putInt(4);
+        assertThrows(IOException.class, () -> RevocationFilter.read(truncated.rewind()));
+    }
+
+    @Test
+    public void disabledFilterFallsBackToTable() throws IOException {
+        var revoked = serials(new Random(4), 100);
+        var index = RevocationIndex.open(compile(revoked, 0), RATE);
+        for (var serial : revoked) {
+            var bytes = serial.toByteArray();
+            assertNotNull(index.get(bytes, 0, bytes.length));
+        }
+        var negative = new byte[]{(byte) 0x80, 1};
+        assertNull(index.get(negative, 0, negative.length));
+    }
+
+    private static int lookups(RevocationIndex index, List<byte[]> serials) {
+        int found = 0;
+        for (var bytes : serials) {
+            if (index.get(bytes, 0, bytes.length) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Test
+    public void filterSpeedsUpLookupsOfSerialsNotRevoked() throws IOException {
+        var random = new Random(5);
+        var revoked = serials(random, 20000);
+        var filtered = RevocationIndex.open(compile(revoked, RATE), RATE);
+        var exact = filtered.withFilter(0);
+        var probes = new ArrayList<byte[]>(1000000);
+        for (var serial : serials(random, 1000000 - 1000)) {
+            probes.add(serial.toByteArray());
+        }
+        for (int i = 0; i < 1000; i++) {
+            probes.add(revoked.get(i).toByteArray());
+        }
+
+        long on = Long.MAX_VALUE;
+        long off = Long.MAX_VALUE;
+        for (int trial = 0; trial < 5; trial++) {
+            long start = System.nanoTime();
+            int foundOn = lookups(filtered, probes);
+            on = Math.min(on, System.nanoTime() - start);
+            start = System.nanoTime();
+            int foundOff = lookups(exact, probes);
+            off = Math.min(off, System.nanoTime() - start);
+            assertEquals(foundOff, foundOn);
+            assertTrue(foundOn >= 1000);
+        }
+        System.out.printf("%d lookups in %d revoked: filter on %d ms, off %d ms%n",
+                probes.size(), revoked.size(), on / 1000000, off / 1000000);
+        assertTrue(on < off);
+    }
+}
@@ -0,0 +1,183 @@
+package io.github.vvb2060.keyattestation.attestation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RevocationListTest {
+    private static final String V1 = "{\"entries\":{" +
+            "\"1a2b\":{\"status\":\"REVOKED\",\"reason\":\"KEY_COMPROMISE\"}," +
+            "\"c0ffee\":{\"status\":\"SUSPENDED\",\"reason\":\"SOFTWARE_FLAW\"}}}";
+    private static final String V2 = "{\"entries\":{" +
+            "\"c0ffee\":{\"status\":\"REVOKED\",\"reason\":\"KEY_COMPROMISE\"}," +
+            "\"beef\":{\"status\":\"REVOKED\",\"reason\":\"KEY_COMPROMISE\"}}}";
+
+    private final List<String> ifNoneMatch = new ArrayList<>();
+    private volatile int code;
+    private volatile String etag;
+    private volatile String body;
+    private HttpServer server;
+    private URL url;
+    private File dir;
+    private File snapshot;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/status", this::handle);
+        server.start();
+        url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/status");
+        dir = Files.createTempDirectory("revocation").toFile();
+        snapshot = new File(dir, "revocation.bin");
+        var entries = new JSONObject(V1).getJSONObject("entries");
+        var bundled = RevocationIndex.compile(entries, false, null, null,
+                RevocationIndex.DEFAULT_FALSE_POSITIVE_RATE);
+        TrustData.revocation.set(RevocationIndex.open(bundled,
+                RevocationIndex.DEFAULT_FALSE_POSITIVE_RATE));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        var files = dir.listFiles();
+        if (files != null) {
+            for (var file : files) {
+                // noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        // noinspection ResultOfMethodCallIgnored
+        dir.delete();
+    }
+
+    private synchronized void handle(HttpExchange exchange) throws IOException {
+        var validator = exchange.getRequestHeaders().getFirst("If-None-Match");
+        ifNoneMatch.add(validator);
+        if (etag != null && etag.equals(validator)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+        }
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (var output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private void serve(int code, String etag, String body) {
+        this.code = code;
+        this.etag = etag;
+        this.body = body;
+    }
+
+    private static RevocationList get(String serial) {
+        return RevocationList.get(new BigInteger(serial, 16).toByteArray());
+    }
+
+    @Test
+    public void refreshPublishesNewListThenHonoursETag() throws IOException {
+        serve(200, "\"v2\"", V2);
+        var update = RevocationList.refresh(url, snapshot);
+        assertTrue(update.modified());
+        assertEquals(1, update.added());
+        assertEquals(1, update.removed());
+        assertEquals(1, update.changed());
+        assertTrue(snapshot.isFile());
+        assertNull(get("1a2b"));
+        assertEquals("REVOKED", get("beef").status());
+        assertEquals("KEY_COMPROMISE", get("c0ffee").reason());
+
+        var published = TrustData.revocation.get();
+        update = RevocationList.refresh(url, snapshot);
+        assertFalse(update.modified());
+        assertEquals("\"v2\"", ifNoneMatch.get(ifNoneMatch.size() - 1));
+        assertSame(published, TrustData.revocation.get());
+        assertFalse(RevocationList.isStale(published, snapshot, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void malformedBodyKeepsCurrentList() throws IOException {
+        serve(200, "\"v2\"", V2);
+        RevocationList.refresh(url, snapshot);
+        var published = TrustData.revocation.get();
+        var bytes = Files.readAllBytes(snapshot.toPath());
+
+        serve(200, "\"v3\"", "{\"entries\":{\"beef\":");
+        assertThrows(IOException.class, () -> RevocationList.refresh(url, snapshot));
+        serve(200, "\"v3\"", "{\"entries\":{\"not hex\":{\"status\":\"REVOKED\"}}}");
+        assertThrows(IOException.class, () -> RevocationList.refresh(url, snapshot));
+
+        assertSame(published, TrustData.revocation.get());
+        assertArrayEquals(bytes, Files.readAllBytes(snapshot.toPath()));
+        assertNotNull(get("beef"));
+    }
+
+    @Test
+    public void serverErrorKeepsCurrentList() {
+        var current = TrustData.revocation.get();
+        serve(500, null, "");
+        assertThrows(IOException.class, () -> RevocationList.refresh(url, snapshot));
+        assertSame(current, TrustData.revocation.get());
+        assertFalse(snapshot.exists());
+        assertEquals("KEY_COMPROMISE", get("1a2b").reason());
+    }
+
+    @Test
+    public void bundledListIsAlwaysStale() throws IOException {
+        var index = TrustData.revocation.get();
+        assertTrue(RevocationList.isStale(index, snapshot, System.currentTimeMillis()));
+
+        serve(200, "\"v2\"", V2);
+        RevocationList.refresh(url, snapshot);
+        index = TrustData.revocation.get();
+        long now = snapshot.lastModified();
+        assertFalse(RevocationList.isStale(index, snapshot, now));
+        assertTrue(RevocationList.isStale(index, snapshot,
+                now + RevocationList.MIN_REFRESH_INTERVAL));
+    }
+
+    @Test
+    public void listWithoutValidatorsIsFreshAfterDownload() throws IOException {
+        serve(200, null, V2);
+        RevocationList.refresh(url, snapshot);
+        var index = TrustData.revocation.get();
+        assertTrue(index.etag().isEmpty());
+        assertTrue(index.lastModified().isEmpty());
+        long now = snapshot.lastModified();
+        assertFalse(RevocationList.isStale(index, snapshot, now));
+        assertTrue(RevocationList.isStale(index, snapshot,
+                now + RevocationList.MIN_REFRESH_INTERVAL));
+
+        var reopened = RevocationIndex.map(snapshot, RevocationIndex.DEFAULT_FALSE_POSITIVE_RATE);
+        assertTrue(reopened.downloaded());
+        assertFalse(RevocationList.isStale(reopened, snapshot, now));
+    }
+}
@@ -0,0 +1,113 @@
+package io.github.vvb2060.keyattestation.keystore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.security.ProviderException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.Arrays;
+import java.util.List;
+
+public class AttestationResponseTest {
+
+    private static Certificate[] chain(CertificateFactory factory, String... names)
+            throws Exception {
+        var certs = new Certificate[names.length];
+        for (int i = 0; i < names.length; i++) {
+            try (InputStream in = AttestationResponseTest.class.getResourceAsStream(
+                    "/chains/" + names[i])) {
+                certs[i] = factory.generateCertificate(in);
+            }
+        }
+        return certs;
+    }
+
+    @Test
+    public void chainsRoundTrip() throws Exception {
+        var factory = CertificateFactory.getInstance("X.509");
+        var attested = chain(factory, "leaf1.pem", "ca.pem", "root.pem");
+        var attestKey = chain(factory, "ca.pem", "root.pem");
+        var data = AttestationResponse.success(List.of(attested, attestKey));
+
+        var chains = AttestationResponse.read(data, factory);
+        assertEquals(2, chains.size());
+        assertEquals(Arrays.asList(attested), chains.get(0));
+        assertEquals(Arrays.asList(attestKey), chains.get(1));
+
+        assertEquals(0, AttestationResponse.read(AttestationResponse.success(List.of()),
+                factory).size());
+    }
+
+    @Test
+    public void errorRoundTrip() throws Exception {
+        var cause = new IllegalStateException("x".repeat(5000));
+        var data = AttestationResponse.failure(new ProviderException("Failed to generate", cause));
+        var factory = CertificateFactory.getInstance("X.509");
+
+        var error = assertThrows(KeyStoreError.class,
+                () -> AttestationResponse.read(data, factory));
+        assertEquals(ProviderException.class.getName(), error.getClassName());
+        assertEquals("Failed to generate", error.getMessage());
+        assertEquals(KeyStoreError.NO_ERROR_CODE, error.getNumericErrorCode());
+        assertEquals(KeyStoreError.NO_ERROR_CODE, error.getErrorCode());
+        assertFalse(error.isTransientFailure());
+        assertTrue(error.isProviderException());
+
+        var next = error.getCause();
+        assertEquals(IllegalStateException.class.getName(), next.getClassName());
+        assertEquals(4096, next.getMessage().length());
+        assertFalse(next.isProviderException());
+        assertNull(next.getCause());
+        assertEquals(next, error.find(IllegalStateException.class.getName()));
+        assertNull(error.find("android.security.KeyStoreException"));
+    }
+
+    @Test
+    public void providerExceptionSubclasses() throws Exception {
+        // like StrongBoxUnavailableException, which the app cannot construct
+        var exception = new ProviderException() {
+        };
+        var data = AttestationResponse.failure(new IllegalStateException(exception));
+
+        var error = assertThrows(KeyStoreError.class,
+                () -> AttestationResponse.read(data, CertificateFactory.getInstance("X.509")));
+        assertFalse(error.isProviderException());
+        assertTrue(error.getCause().isProviderException());
+    }
+
+    @Test
+    public void nullMessageAndCyclicCauses() throws Exception {
+        var first = new ProviderException();
+        var second = new RuntimeException((String) null);
+        first.initCause(second);
+        second.initCause(first);
+        var data = AttestationResponse.failure(first);
+
+        var error = assertThrows(KeyStoreError.class,
+                () -> AttestationResponse.read(data, CertificateFactory.getInstance("X.509")));
+        assertNull(error.getMessage());
+        assertEquals(ProviderException.class.getName(), error.toString());
+        assertEquals(RuntimeException.class.getName(), error.getCause().getClassName());
+        assertNull(error.getCause().getCause());
+    }
+
+    @Test
+    public void truncatedResponsesAreRejected() throws Exception {
+        var factory = CertificateFactory.getInstance("X.509");
+        var data = AttestationResponse.success(List.<Certificate[]>of(
+                chain(factory, "leaf1.pem", "ca.pem")));
+        for (int length : new int[]{0, 1, 5, 9, 13, data.length / 2, data.length - 1}) {
+            var truncated = Arrays.copyOf(data, length);
+            assertThrows(String.valueOf(length), CertificateException.class,
+                    () -> AttestationResponse.read(truncated, factory));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package io.github.vvb2060.keyattestation.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateFactory;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import io.github.vvb2060.keyattestation.attestation.TrustData;
+import io.github.vvb2060.keyattestation.lang.AttestationException;
+
+public class AttestationDataTest {
+
+    private static List<X509Certificate> chain(String... names) throws Exception {
+        var factory = CertificateFactory.getInstance("X.509");
+        var certs = new ArrayList<X509Certificate>(names.length);
+        for (var name : names) {
+            try (InputStream in = AttestationDataTest.class.getResourceAsStream(
+                    "/chains/" + name)) {
+                certs.add((X509Certificate) factory.generateCertificate(in));
+            }
+        }
+        return certs;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        TrustData.load(new ByteArrayInputStream("{\"entries\":{}}".getBytes(
+                StandardCharsets.UTF_8)), null);
+    }
+
+    @Test
+    public void wellFormedChainIsParsed() throws Exception {
+        var data = AttestationData.parseCertificateChain(chain("leaf1.pem", "ca.pem",
+                "root.pem"));
+        assertNotNull(data.showAttestation);
+        assertEquals(3, data.getCerts().size());
+    }
+
+    @Test
+    public void malformedPurposeFailsTheParse() throws Exception {
+        // the TEE enforced purpose of bad.pem is an OCTET STRING instead of a SET
+        var certs = chain("bad.pem", "ca.pem", "root.pem");
+        var e = assertThrows(AttestationException.class,
+                () -> AttestationData.parseCertificateChain(certs));
+        assertTrue(e.getCause() instanceof CertificateParsingException);
+
+        e = assertThrows(AttestationException.class,
+                () -> AttestationData.parseCertificateChain(certs, ForkJoinPool.commonPool()));
+        assertTrue(e.getCause() instanceof CertificateParsingException);
+    }
+}
@@ -0,0 +1,173 @@
+package io.github.vvb2060.keyattestation.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.vvb2060.keyattestation.attestation.CertificateInfo;
+import io.github.vvb2060.keyattestation.attestation.RootPublicKey;
+import io.github.vvb2060.keyattestation.attestation.TrustBundle;
+import io.github.vvb2060.keyattestation.attestation.TrustData;
+
+public class BatchVerifierTest {
+    // serial number of leaf2.pem
+    private static final String STATUS = "{\"entries\":{" +
+            "\"65\":{\"status\":\"REVOKED\",\"reason\":\"KEY_COMPROMISE\"}}}";
+
+    private ExecutorService executor;
+    private File dir;
+
+    private static byte[] resource(String name) throws IOException {
+        try (InputStream in = BatchVerifierTest.class.getResourceAsStream("/chains/" + name)) {
+            var out = new ByteArrayOutputStream();
+            var buffer = new byte[4096];
+            for (int length; (length = in.read(buffer)) != -1; ) {
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] concat(String... names) throws IOException {
+        var out = new ByteArrayOutputStream();
+        for (var name : names) {
+            out.write(resource(name));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] der(String... names) throws Exception {
+        var factory = CertificateFactory.getInstance("X.509");
+        var out = new ByteArrayOutputStream();
+        for (var name : names) {
+            var cert = factory.generateCertificate(new ByteArrayInputStream(resource(name)));
+            out.write(cert.getEncoded());
+        }
+        return out.toByteArray();
+    }
+
+    private File write(File dir, String name, byte[] data) throws IOException {
+        var file = new File(dir, name);
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newFixedThreadPool(2);
+        dir = Files.createTempDirectory("chains").toFile();
+        var bundle = write(dir.getParentFile(), dir.getName() + "_oem.pem", resource("root.pem"));
+        try (var status = new ByteArrayInputStream(STATUS.getBytes(StandardCharsets.UTF_8))) {
+            TrustData.load(status, TrustBundle.load(bundle));
+        } finally {
+            // noinspection ResultOfMethodCallIgnored
+            bundle.delete();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+        var files = dir.listFiles();
+        if (files != null) {
+            for (var file : files) {
+                // noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        // noinspection ResultOfMethodCallIgnored
+        dir.delete();
+    }
+
+    @Test
+    public void verifiesDirectoryInOrder() throws Exception {
+        write(dir, "a.pem", concat("leaf1.pem", "ca.pem", "root.pem"));
+        write(dir, "b.der", der("leaf2.pem", "ca.pem", "root.pem"));
+        write(dir, "c.pem", "-----BEGIN CERTIFICATE-----\nAAAA\n-----END CERTIFICATE-----\n"
+                .getBytes(StandardCharsets.US_ASCII));
+        write(dir, "d.pem", concat("leaf2.pem", "ca.pem", "root.pem",
+                "leaf1.pem", "ca.pem", "root.pem"));
+
+        var time = new AtomicLong();
+        var logs = new ArrayList<String>();
+        var verifier = new BatchVerifier(executor, 2, () -> time.getAndAdd(1000), logs::add);
+        var results = new ArrayList<BatchVerifier.Result>();
+        var summary = verifier.verify(dir, results::add);
+
+        assertEquals(5, summary.chains());
+        assertEquals(1, summary.failed());
+        assertEquals(1000, summary.elapsedMillis());
+        assertEquals(5.0, summary.chainsPerSecond(), 0);
+        assertEquals(1, logs.size());
+        assertTrue(logs.get(0), logs.get(0).startsWith("Batch verification: " + summary));
+
+        var sources = new ArrayList<String>();
+        for (var result : results) {
+            sources.add(new File(result.source()).getName() + "#" + result.index());
+        }
+        assertEquals(List.of("a.pem#0", "b.der#0", "c.pem#0", "d.pem#0", "d.pem#1"), sources);
+
+        assertEquals(RootPublicKey.Status.OEM, results.get(0).status());
+        // leaf2 is revoked
+        assertEquals(RootPublicKey.Status.FAILED, results.get(1).status());
+        assertTrue(results.get(1).data().getCerts().stream()
+                .anyMatch(cert -> cert.getStatus() == CertificateInfo.CERT_REVOKED));
+        assertNotNull(results.get(2).error());
+        assertNull(results.get(2).data());
+        assertEquals(RootPublicKey.Status.NULL, results.get(2).status());
+        assertEquals(RootPublicKey.Status.FAILED, results.get(3).status());
+        assertEquals(RootPublicKey.Status.OEM, results.get(4).status());
+        for (int i : new int[]{0, 1, 3, 4}) {
+            assertNull(results.get(i).error());
+            assertEquals(3, results.get(i).data().getCerts().size());
+        }
+    }
+
+    @Test
+    public void unknownRootIsReported() throws Exception {
+        TrustData.load(new ByteArrayInputStream("{\"entries\":{}}".getBytes(
+                StandardCharsets.UTF_8)), null);
+        var verifier = new BatchVerifier(executor, 1, () -> 0, message -> {
+        });
+        var results = new ArrayList<BatchVerifier.Result>();
+        var summary = verifier.verify(new ByteArrayInputStream(concat("leaf1.pem", "ca.pem",
+                "root.pem")), "stream", results::add);
+        assertEquals(1, summary.chains());
+        assertEquals(0, summary.failed());
+        assertEquals(RootPublicKey.Status.UNKNOWN, results.get(0).status());
+    }
+
+    @Test
+    public void chainWithoutRootEndsAtNextLeaf() throws Exception {
+        var verifier = new BatchVerifier(executor, 1, () -> 0, message -> {
+        });
+        var results = new ArrayList<BatchVerifier.Result>();
+        var summary = verifier.verify(new ByteArrayInputStream(concat("leaf1.pem", "ca.pem",
+                "leaf2.pem", "ca.pem", "root.pem")), "stream", results::add);
+        assertEquals(2, summary.chains());
+        assertEquals(0, results.get(0).index());
+        assertEquals(2, results.get(0).data().getCerts().size());
+        assertEquals(1, results.get(1).index());
+        assertEquals(3, results.get(1).data().getCerts().size());
+        assertEquals(RootPublicKey.Status.FAILED, results.get(1).status());
+    }
+}
@@ -0,0 +1,7 @@
+package android.security;
+
+public class KeyStoreException_rename extends Exception {
+    public int getErrorCode() {
+        throw new RuntimeException("Stub!");
+    }
+}